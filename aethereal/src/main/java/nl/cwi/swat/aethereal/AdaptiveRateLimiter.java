@@ -0,0 +1,115 @@
+package nl.cwi.swat.aethereal;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Rate limiter shared by all the requests sent to a remote host, whose rate
+ * follows an additive-increase/multiplicative-decrease scheme: every successful
+ * request raises the permitted rate a little, up to a ceiling, and every sign of
+ * throttling halves it. Requests failing because of throttling are retried
+ * after a jittered exponential backoff, so that concurrent callers don't all
+ * come back at once.
+ */
+public class AdaptiveRateLimiter {
+	private static final double MIN_RATE = 0.1;
+	private static final double DECREASE_FACTOR = 0.5;
+	private static final long BASE_BACKOFF = TimeUnit.SECONDS.toMillis(1);
+	private static final long MAX_BACKOFF = TimeUnit.SECONDS.toMillis(60);
+
+	private final String name;
+	private final double maxRate;
+	// Permits per second gained per second of successful requests
+	private final double increase;
+	private final RateLimiter limiter;
+	private final Sleeper sleeper;
+	private double rate;
+	private long lastDecrease;
+
+	/**
+	 * @param name    Name of the remote host, for logging purposes
+	 * @param maxRate Ceiling and initial rate, in requests per second
+	 */
+	public AdaptiveRateLimiter(String name, double maxRate) {
+		this(name, maxRate, Math.max(MIN_RATE, maxRate / 10));
+	}
+
+	/**
+	 * @param increase Rate gained, in requests per second, for each second of
+	 *                 successful requests
+	 */
+	public AdaptiveRateLimiter(String name, double maxRate, double increase) {
+		this(name, maxRate, increase, Thread::sleep);
+	}
+
+	/**
+	 * @param sleeper Waits for the backoff delays, so that tests needn't
+	 */
+	AdaptiveRateLimiter(String name, double maxRate, double increase, Sleeper sleeper) {
+		this.name = name;
+		this.sleeper = sleeper;
+		this.maxRate = Math.max(MIN_RATE, maxRate);
+		this.increase = increase;
+		this.rate = this.maxRate;
+		this.limiter = RateLimiter.create(this.rate);
+	}
+
+	/**
+	 * Wait for a permit at the current rate
+	 */
+	public void acquire() {
+		limiter.acquire();
+	}
+
+	/**
+	 * Record a request the remote host answered, whatever the answer
+	 */
+	public synchronized void onSuccess() {
+		if (rate >= maxRate)
+			return;
+		// At the current rate, 'rate' successes take about a second
+		setRate(Math.min(maxRate, rate + increase / rate));
+	}
+
+	/**
+	 * Record a throttled request, then wait before retrying it
+	 *
+	 * @param attempt Number of times this request was throttled already
+	 */
+	public void backoff(int attempt) throws InterruptedException {
+		onThrottled();
+		long ceiling = Math.min(MAX_BACKOFF, BASE_BACKOFF << Math.min(attempt, 16));
+		// Equal jitter: at least half of the exponential delay
+		long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+		System.err.println("Backing off " + name + " for " + delay + "ms, now at "
+				+ String.format("%.2f", getRate()) + " requests/s");
+		sleeper.sleep(delay);
+	}
+
+	/**
+	 * Current permitted rate, in requests per second
+	 */
+	public synchronized double getRate() {
+		return rate;
+	}
+
+	private synchronized void onThrottled() {
+		// Concurrent requests throttled at once count as a single signal
+		long now = System.currentTimeMillis();
+		if (now - lastDecrease < BASE_BACKOFF)
+			return;
+		lastDecrease = now;
+		setRate(Math.max(MIN_RATE, rate * DECREASE_FACTOR));
+	}
+
+	private void setRate(double rate) {
+		this.rate = rate;
+		limiter.setRate(rate);
+	}
+
+	interface Sleeper {
+		void sleep(long millis) throws InterruptedException;
+	}
+}
@@ -4,6 +4,7 @@ import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
 import org.eclipse.aether.DefaultRepositorySystemSession;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SessionData;
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
 import org.eclipse.aether.impl.DefaultServiceLocator;
@@ -40,6 +41,18 @@ public class Aether {
 		return session;
 	}
 
+	/**
+	 * New session over the given local repository, sharing {@code data} with
+	 * other sessions. Transports keep their state there, connection pools
+	 * included.
+	 */
+	public static RepositorySystemSession newSession(RepositorySystem system, String repositoryPath,
+			SessionData data) {
+		DefaultRepositorySystemSession session = (DefaultRepositorySystemSession) newSession(system, repositoryPath);
+		session.setData(data);
+		return session;
+	}
+
 	public static RepositorySystemSession newSession(RepositorySystem system) {
 		return newSession(system, LOCAL_REPO);
 	}
@@ -1,10 +1,23 @@
 package nl.cwi.swat.aethereal;
 
 import java.io.IOException;
-import java.net.NoRouteToHostException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.apache.commons.io.FileUtils;
@@ -22,14 +35,12 @@ import org.eclipse.aether.resolution.VersionRangeRequest;
 import org.eclipse.aether.resolution.VersionRangeResolutionException;
 import org.eclipse.aether.resolution.VersionRangeResult;
 import org.eclipse.aether.transfer.ArtifactNotFoundException;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.select.Elements;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
-import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * The Aether collector relies on Eclipse's Aether to gather information
@@ -40,16 +51,62 @@ public class AetherCollector implements MavenCollector {
 	private RepositorySystemSession session = Aether.newSession(system);
 	private RemoteRepository repository = Aether.newRemoteRepository();
 
-	private RateLimiter aetherLimiter;
-	private RateLimiter jsoupLimiter;
-
-	private static final String MVN_REPOSITORY_USAGE_PAGE = "https://mvnrepository.com/artifact/%s/%s/%s/usages?p=%d";
+	private AdaptiveRateLimiter aetherLimiter;
+	private AdaptiveRateLimiter jsoupLimiter;
+	private UsagePageScraper scraper;
+	// Optional, lists versions from maven-metadata.xml instead of resolving ranges
+	private MavenMetadataCache metadata;
+	// Existence of the artifacts checked so far, whatever the cache
+	private Map<String, Boolean> existence = new ConcurrentHashMap<>();
+
+	// Requests to Maven Central failing that many times in a row are given up
+	private static final int MAX_ATTEMPTS = 5;
+	// Descriptor reads are latency-bound: run enough of them concurrently to use
+	// the whole aetherLimiter budget
+	private ExecutorService executor;
+	// Optional, persists descriptors and missing artifacts across runs
+	private DescriptorCache cache;
 
 //	private static final Logger logger = LogManager.getLogger(AetherCollector.class);
 
 	public AetherCollector(int aetherQps, int jsoupQps) {
-		this.aetherLimiter = RateLimiter.create(aetherQps);
-		this.jsoupLimiter = RateLimiter.create(jsoupQps);
+		this(aetherQps, jsoupQps, aetherQps);
+	}
+
+	/**
+	 * @param threads Maximum number of concurrent requests to Maven Central
+	 */
+	public AetherCollector(int aetherQps, int jsoupQps, int threads) {
+		this(aetherQps, jsoupQps, threads, null);
+	}
+
+	/**
+	 * @param threads Maximum number of concurrent requests to Maven Central
+	 * @param cache   Cache of descriptors read in previous runs, or null
+	 */
+	public AetherCollector(int aetherQps, int jsoupQps, int threads, DescriptorCache cache) {
+		this(new AdaptiveRateLimiter("Maven Central", aetherQps), new AdaptiveRateLimiter("mvnrepository.com", jsoupQps),
+				threads, cache, null, null);
+	}
+
+	/**
+	 * @param aetherLimiter Limiter of the requests to Maven Central, possibly
+	 *                      shared with an {@link AetherDownloader}
+	 * @param jsoupLimiter  Limiter of the requests to mvnrepository.com
+	 * @param pages         Cache of the usage pages scraped in previous runs, or
+	 *                      null
+	 * @param metadata      Cache of the version listings of Maven Central, or
+	 *                      null
+	 */
+	public AetherCollector(AdaptiveRateLimiter aetherLimiter, AdaptiveRateLimiter jsoupLimiter, int threads,
+			DescriptorCache cache, HttpCache pages, MavenMetadataCache metadata) {
+		this.cache = cache;
+		this.metadata = metadata;
+		this.aetherLimiter = aetherLimiter;
+		this.jsoupLimiter = jsoupLimiter;
+		this.scraper = new UsagePageScraper(jsoupLimiter, pages);
+		this.executor = Executors.newFixedThreadPool(Math.max(1, threads),
+				new ThreadFactoryBuilder().setNameFormat("aether-collector-%d").setDaemon(true).build());
 	}
 
 	@Override
@@ -59,54 +116,101 @@ public class AetherCollector implements MavenCollector {
 
 	@Override
 	public List<Artifact> collectAvailableVersions(String coordinates, String lowerBound, String upperBound) {
+		if (metadata != null) {
+			try {
+				return metadata.versionsOf(coordinates, lowerBound, upperBound).stream()
+						.map(v -> new DefaultArtifact(coordinates + ":" + v)).collect(Collectors.toList());
+			} catch (IOException e) {
+				System.err.println("Couldn't read metadata of " + coordinates + ", resolving its versions: " + e);
+			}
+		}
+
 		VersionRangeRequest rangeRequest = new VersionRangeRequest();
 		String rangeQuery = String.format("%s:[%s,%s)", coordinates, lowerBound, upperBound);
 		rangeRequest.setArtifact(new DefaultArtifact(rangeQuery));
 		rangeRequest.addRepository(repository);
 
-		try {
-			VersionRangeResult rangeResult = system.resolveVersionRange(session, rangeRequest);
-			return rangeResult.getVersions().stream().map(v -> new DefaultArtifact(coordinates + ":" + v))
-					.collect(Collectors.toList());
-		} catch (VersionRangeResolutionException e) {
-			System.err.println("Couldn't resolve version range " + e);
-			return Lists.newArrayList();
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			try {
+				// Throttle connections with Maven Central
+				aetherLimiter.acquire();
+				VersionRangeResult rangeResult = system.resolveVersionRange(session, rangeRequest);
+				aetherLimiter.onSuccess();
+				return rangeResult.getVersions().stream().map(v -> new DefaultArtifact(coordinates + ":" + v))
+						.collect(Collectors.toList());
+			} catch (VersionRangeResolutionException e) {
+				System.err.println("Couldn't resolve version range " + e);
+				if (!backoff(attempt))
+					break;
+			}
 		}
+
+		System.err.println("Giving up on the versions of " + coordinates + " after " + MAX_ATTEMPTS + " attempts");
+		return Lists.newArrayList();
 	}
 
 	@Override
 	public List<Artifact> collectClientsOf(Artifact artifact) {
+		return new ArrayList<>(collectClientsOfVersions(Collections.singletonList(artifact)).get(artifact));
+	}
+
+	@Override
+	public Multimap<Artifact, Artifact> collectClientsOf(String coordinates) {
+		List<Artifact> allVersions = collectAvailableVersions(coordinates);
+		System.out.println("Retrieving all clients of " + allVersions.size() + " versions of " + coordinates);
+		return collectClientsOfVersions(allVersions);
+	}
+
+	/**
+	 * Collect the clients of all the given library versions at once. Usage pages
+	 * are scraped for every library, but the descriptor of each candidate client
+	 * version is read only once and matched against all libraries.
+	 *
+	 * @throws UncheckedIOException if some usage page couldn't be fetched
+	 */
+	public Multimap<Artifact, Artifact> collectClientsOfVersions(List<Artifact> libraries) {
 		// Don't rely too much on those results :)
-		List<Artifact> res = new ArrayList<>();
+		Multimap<Artifact, Artifact> res = ArrayListMultimap.create();
+		Map<String, Artifact> targets = new HashMap<>();
+		for (Artifact library : libraries)
+			targets.put(library.toString(), library);
+
+		// First, scrap usage info from mvnrepository.com (version not included)
+		System.out.println("Scrapping HTML usage pages from mvnrepository.com...");
+		Set<String> parsed = new LinkedHashSet<>();
+		for (Artifact library : libraries) {
+			try {
+				parsed.addAll(scraper.scrape(library.getGroupId(), library.getArtifactId(), library.getVersion()));
+			} catch (IOException e) {
+				// A partial listing would pass for the complete one
+				throw new UncheckedIOException(e);
+			}
+		}
 
 		// Don't pollute the local repo with all the POMs we'll download, use a
 		// temporary one and delete it after
-		RepositorySystemSession tmpSession = Aether.newSession(system, "tmp-repo");
+		RepositorySystemSession tmpSession = Aether.newSession(system, "tmp-repo", session.getData());
 
 		try {
-			// First, scrap usage info from mvnrepository.com (version not included)
-			System.out.println("Scrapping HTML usage pages from mvnrepository.com...");
-			List<String> parsed = parseUsagePage(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(),
-					1);
-
 			// Then, look for available versions via Aether
 			// Keep in mind that artifacts on mvnrepository.com may be != artifacts on Maven
 			// Central
-			for (String coordinates : parsed) {
-				System.out.println("Looking for matching client versions for " + coordinates);
-				List<Artifact> allVersions = collectAvailableVersions(coordinates);
-
-				// For every version, lookup its direct dependencies and find a match
-				for (Artifact client : allVersions) {
-					// If 'client' has 'artifact' as a direct dependency, we have a match
-					List<Dependency> dependencies = getDependencies(client, tmpSession);
-					for (Dependency dependency : dependencies) {
-						if (artifact.toString().equals(dependency.getArtifact().toString())
-								&& dependency.getScope().equals("compile")) {
-							System.out.println("{} does match " + client);
-							res.add(client);
-							break;
-						}
+			System.out.println("Looking for matching client versions for " + parsed.size() + " clients");
+			List<Artifact> clients = inParallel(new ArrayList<>(parsed), this::collectAvailableVersions).stream()
+					.flatMap(List::stream).collect(Collectors.toList());
+
+			// For every version, lookup its direct dependencies and find a match. The
+			// descriptors are read concurrently, and matched in order
+			List<List<Dependency>> descriptors = inParallel(clients, client -> getDependencies(client, tmpSession));
+			for (int i = 0; i < clients.size(); i++) {
+				Artifact client = clients.get(i);
+				Set<Artifact> matched = new HashSet<>();
+				// If 'client' has a library as a direct dependency, we have a match
+				for (Dependency dependency : descriptors.get(i)) {
+					Artifact library = targets.get(dependency.getArtifact().toString());
+					if (library != null && dependency.getScope().equals("compile") && matched.add(library)) {
+						System.out.println(library + " does match " + client);
+						res.put(library, client);
 					}
 				}
 			}
@@ -123,17 +227,18 @@ public class AetherCollector implements MavenCollector {
 		return res;
 	}
 
-	@Override
-	public Multimap<Artifact, Artifact> collectClientsOf(String coordinates) {
-		Multimap<Artifact, Artifact> res = ArrayListMultimap.create();
-		List<Artifact> allVersions = collectAvailableVersions(coordinates);
-
-		for (Artifact artifact : allVersions) {
-			System.out.println("Retrieving all clients of " + artifact);
-			res.putAll(artifact, collectClientsOf(artifact));
-		}
+	/**
+	 * Current rate of the requests to Maven Central, in requests per second
+	 */
+	public double getAetherRate() {
+		return aetherLimiter.getRate();
+	}
 
-		return res;
+	/**
+	 * Current rate of the requests to mvnrepository.com, in requests per second
+	 */
+	public double getJsoupRate() {
+		return jsoupLimiter.getRate();
 	}
 
 	@Override
@@ -141,87 +246,153 @@ public class AetherCollector implements MavenCollector {
 		throw new UnsupportedOperationException("Not yet");
 	}
 
+	// Apply task to every input on the executor, and return the results in input
+	// order
+	private <T, R> List<R> inParallel(List<T> inputs, Function<T, R> task) {
+		List<Future<R>> futures = new ArrayList<>(inputs.size());
+		for (T input : inputs)
+			futures.add(executor.submit(() -> task.apply(input)));
+
+		List<R> res = new ArrayList<>(inputs.size());
+		try {
+			for (Future<R> future : futures)
+				res.add(future.get());
+		} catch (InterruptedException e) {
+			futures.forEach(future -> future.cancel(true));
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while querying Maven Central", e);
+		} catch (ExecutionException e) {
+			futures.forEach(future -> future.cancel(true));
+			Throwables.throwIfUnchecked(e.getCause());
+			throw new IllegalStateException(e.getCause());
+		}
+		return res;
+	}
+
 	private List<Dependency> getDependencies(Artifact client, RepositorySystemSession tmpSession) {
+		if (cache != null) {
+			List<Dependency> cached = cache.get(client);
+			if (cached != null)
+				return cached;
+			if (cache.isMissing(client))
+				return Collections.emptyList();
+		}
+
 		ArtifactDescriptorRequest descriptorRequest = new ArtifactDescriptorRequest();
 		descriptorRequest.setArtifact(client);
 		descriptorRequest.addRepository(repository);
 
-		ArtifactDescriptorResult descriptorResult = null;
-		while (descriptorResult == null) {
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
 			try {
 				// Throttle connections with Maven Central
 				aetherLimiter.acquire();
-				descriptorResult = system.readArtifactDescriptor(tmpSession, descriptorRequest);
+				ArtifactDescriptorResult descriptorResult = system.readArtifactDescriptor(tmpSession, descriptorRequest);
+				aetherLimiter.onSuccess();
+				if (cache != null)
+					cache.put(client, descriptorResult.getDependencies());
+				return descriptorResult.getDependencies();
 			} catch (ArtifactDescriptorException e) {
 				Throwable root = ExceptionUtils.getRootCause(e);
 
 				// Either the artifact doesn't exist on Central, or we got kicked
 				if (root instanceof ArtifactNotFoundException) {
-					System.err.println("Artifact {} retrieved from mvnrepository.com doesn't exist on Maven Central." + client);
+					System.err.println("Artifact " + client + " retrieved from mvnrepository.com doesn't exist on Maven Central.");
+					aetherLimiter.onSuccess();
+					if (cache != null)
+						cache.markMissing(client);
 					// We won't get it ever
-					break;
-				} else if (root instanceof NoRouteToHostException) {
-					System.err.println("We got kicked from Maven Central. Waiting 30s." + e);
-					try {
-						Thread.sleep(1000 * 30);
-					} catch (InterruptedException ee) {
-						System.err.println(ee);
-						Thread.currentThread().interrupt();
-					}
+					return Collections.emptyList();
 				}
+				System.err.println("We probably got kicked from Maven Central: " + e);
+				if (!backoff(attempt))
+					break;
 			}
 		}
 
-		return descriptorResult != null ? descriptorResult.getDependencies() : Collections.emptyList();
+		// Not cached, to be read again next time
+		System.err.println("Giving up on the descriptor of " + client + " after " + MAX_ATTEMPTS + " attempts");
+		return Collections.emptyList();
 	}
 
-	private List<String> parseUsagePage(String groupId, String artifactId, String version, int page) {
-		List<String> res = new ArrayList<>();
-
-		Document doc = null;
-		while (doc == null) {
-			try {
-				// Probably useless, but costless
-				jsoupLimiter.acquire();
-				doc = Jsoup.connect(String.format(MVN_REPOSITORY_USAGE_PAGE, groupId, artifactId, version, page))
-						.timeout(10000).get();
-			} catch (Exception e) {
-				System.err.println("We got kicked from mvnrepository.com. Waiting 30s.");
-				try {
-					Thread.sleep(1000 * 30);
-				} catch (InterruptedException ee) {
-					System.err.println(ee);
-					Thread.currentThread().interrupt();
-				}
-			}
-
+	// Back off before the next attempt at a failed request, if any. False if
+	// there's none left, or if interrupted.
+	private boolean backoff(int attempt) {
+		if (attempt + 1 >= MAX_ATTEMPTS)
+			return false;
+		try {
+			aetherLimiter.backoff(attempt);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
 		}
+	}
 
-		// One div.im block per user of the library; p.im-subtitle contains coordinates
-		Elements ims = doc.select("p.im-subtitle");
-
-		if (!ims.isEmpty()) {
-			ims.forEach(im -> {
-				// Two <a/> per .im-subtitle: first is groupId, second is artifactId
-				Elements as = im.select("a");
-
-				if (as.size() == 2) {
-					String parsedGroupId = as.get(0).text();
-					String parsedArtifactId = as.get(1).text();
-
-					res.add(String.format("%s:%s", parsedGroupId, parsedArtifactId));
-				}
-			});
-
-			// Continue on next usage page
-			res.addAll(parseUsagePage(groupId, artifactId, version, page + 1));
+	@Override
+	public boolean checkArtifact(String coordinate) {
+		Artifact artifact = new DefaultArtifact(coordinate);
+		Boolean known = existence.get(artifact.toString());
+		if (known != null)
+			return known;
+		if (cache != null && cache.isPresent(artifact))
+			return true;
+		if (cache != null && cache.isMissing(artifact))
+			return false;
+
+		Boolean exists = probe(artifact);
+		if (exists == null)
+			// Not the same as missing, and not remembered
+			throw new UncheckedIOException(
+					new IOException("Maven Central couldn't tell whether " + artifact + " exists"));
+
+		existence.put(artifact.toString(), exists);
+		if (cache != null) {
+			if (exists)
+				cache.markPresent(artifact);
+			else
+				cache.markMissing(artifact);
 		}
-
-		return res;
+		return exists;
 	}
 
 	@Override
-	public boolean checkArtifact(String coordinate) {
-		throw new UnsupportedOperationException("Not implemented, yet");
+	public Map<String, Boolean> checkArtifacts(Collection<String> coordinates) {
+		List<String> inputs = new ArrayList<>(coordinates);
+		List<Boolean> found = inParallel(inputs, this::checkArtifact);
+
+		Map<String, Boolean> ret = new LinkedHashMap<>();
+		for (int i = 0; i < inputs.size(); i++)
+			ret.put(inputs.get(i), found.get(i));
+		return ret;
+	}
+
+	// Whether artifact exists, according to its version listing or to a HEAD
+	// request on its POM, or null if Maven Central couldn't tell
+	private Boolean probe(Artifact artifact) {
+		if (metadata != null) {
+			try {
+				// Shared by all the versions of the artifact
+				if (metadata.versionsOf(artifact.getGroupId() + ":" + artifact.getArtifactId())
+						.contains(artifact.getVersion()))
+					return true;
+			} catch (IOException e) {
+				System.err.println("Couldn't read metadata of " + artifact + ": " + e);
+			}
+		}
+
+		// The listing may be stale: ask for the POM itself
+		String root = Aether.REMOTE_URL.endsWith("/") ? Aether.REMOTE_URL : Aether.REMOTE_URL + "/";
+		String url = String.format("%s%s/%s/%s/%s-%s.pom", root, artifact.getGroupId().replace('.', '/'),
+				artifact.getArtifactId(), artifact.getBaseVersion(), artifact.getArtifactId(), artifact.getVersion());
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			try {
+				return HttpCache.exists(url, aetherLimiter);
+			} catch (IOException e) {
+				System.err.println("We got kicked from Maven Central: " + e);
+				if (!backoff(attempt))
+					break;
+			}
+		}
+		return null;
 	}
 }
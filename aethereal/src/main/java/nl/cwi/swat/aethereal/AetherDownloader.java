@@ -2,15 +2,38 @@ package nl.cwi.swat.aethereal;
 
 import static org.eclipse.aether.repository.RepositoryPolicy.CHECKSUM_POLICY_FAIL;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.NoRouteToHostException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.eclipse.aether.DefaultRepositorySystemSession;
 import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.DefaultSessionData;
 import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SessionData;
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.repository.Authentication;
 import org.eclipse.aether.repository.RemoteRepository;
@@ -18,26 +41,94 @@ import org.eclipse.aether.repository.RepositoryPolicy;
 import org.eclipse.aether.resolution.ArtifactRequest;
 import org.eclipse.aether.resolution.ArtifactResolutionException;
 import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.transfer.AbstractTransferListener;
 import org.eclipse.aether.transfer.ArtifactNotFoundException;
 import org.eclipse.aether.transfer.ArtifactTransferException;
 import org.eclipse.aether.transfer.MetadataNotFoundException;
+import org.eclipse.aether.transfer.TransferEvent;
 import org.eclipse.aether.util.repository.AuthenticationBuilder;
 
-import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.math.LongMath;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class AetherDownloader {
 	private RepositorySystem system;
 	private RepositorySystemSession session;
-	private RemoteRepository repository;
+	// Ranked by throughput for every download
+	private List<Mirror> mirrors;
+	// Shared by all sessions, and thus their transports and connection pools
+	private SessionData sessionData = new DefaultSessionData();
+	// One session per local repository, created on first use
+	private Map<String, RepositorySystemSession> sessions = new ConcurrentHashMap<>();
+	// Optional, shares downloaded files across repositories and runs
+	private ArtifactStore store;
 
-	private RateLimiter aetherLimiter;
+	// Downloads are latency-bound: run enough of them concurrently to use the
+	// whole budget of the mirrors
+	private ExecutorService executor;
+	// Requests to the mirrors, when there are several of them
+	private ExecutorService hedges;
+	// Holds the staging repository of every request to a mirror, created on
+	// first use
+	private Path stagingRoot;
 
+	private static final int DEFAULT_THREADS = 4;
+	// A download slower than this percentile of its mirror is hedged
+	private static final double HEDGE_PERCENTILE = 0.95;
+	// How often pending requests are checked against their deadline
+	private static final long HEDGE_POLL = 50;
+	// Attempts on a mirror failing to transfer, when others may answer instead
+	private static final int MAX_HEDGED_ATTEMPTS = 5;
 
 	public AetherDownloader(int aetherQps) {
+		this(new AdaptiveRateLimiter("Maven Central", aetherQps), aetherQps);
+	}
+
+	/**
+	 * @param aetherLimiter Limiter of the requests to Maven Central, possibly
+	 *                      shared with an {@link AetherCollector}
+	 */
+	public AetherDownloader(AdaptiveRateLimiter aetherLimiter) {
+		this(aetherLimiter, DEFAULT_THREADS);
+	}
+
+	/**
+	 * @param threads Maximum number of concurrent downloads
+	 */
+	public AetherDownloader(AdaptiveRateLimiter aetherLimiter, int threads) {
+		this(aetherLimiter, threads, null);
+	}
+
+	/**
+	 * @param threads Maximum number of concurrent downloads
+	 * @param store   Store of the files downloaded so far, linked into
+	 *                repositories instead of being downloaded again, or null
+	 */
+	public AetherDownloader(AdaptiveRateLimiter aetherLimiter, int threads, ArtifactStore store) {
+		this(Collections.singletonList(new Mirror("Maven Central", Aether.REMOTE_URL, aetherLimiter)), threads, store);
+	}
+
+	/**
+	 * Download from several mirrors of the same repository. Each download is
+	 * first requested from the mirror with the best measured throughput. Whenever
+	 * that mirror, once the request is sent, is slower than usual to answer or to
+	 * transfer the artifact, or fails, it is also requested from the next mirror,
+	 * and so on. The first download verified against its checksums wins.
+	 *
+	 * @param mirrors Mirrors to download from, in order of preference until
+	 *                their throughput is known
+	 */
+	public AetherDownloader(List<Mirror> mirrors, int threads, ArtifactStore store) {
+		if (mirrors.isEmpty())
+			throw new IllegalArgumentException("At least one mirror is required");
+		this.store = store;
+		this.mirrors = new ArrayList<>(mirrors);
 		system = Aether.newRepositorySystem();
-		session = Aether.newSession(system);
-		repository = toRemoteRepository("https://repo1.maven.org/maven2/", Optional.empty(), Optional.empty());;
-		aetherLimiter = RateLimiter.create(aetherQps);
+		session = Aether.newSession(system, Aether.LOCAL_REPO, sessionData);
+		this.executor = Executors.newFixedThreadPool(Math.max(1, threads),
+				new ThreadFactoryBuilder().setNameFormat("aether-downloader-%d").setDaemon(true).build());
+		this.hedges = Executors.newCachedThreadPool(
+				new ThreadFactoryBuilder().setNameFormat("aether-hedge-%d").setDaemon(true).build());
 	}
 
 	public static RemoteRepository toRemoteRepository(
@@ -59,67 +150,405 @@ public class AetherDownloader {
 		  }
 
 	public Artifact downloadArtifactTo(Artifact artifact, String repositoryPath) {
+		return download(artifact, sessionFor(repositoryPath)).getResolved();
+	}
+
+	public Artifact downloadArtifact(Artifact artifact) {
+		return downloadArtifactTo(artifact, null);
+	}
+
+	public List<Artifact> downloadAllArtifacts(Collection<Artifact> list) {
+		return downloadAll(list, null).stream().map(DownloadResult::getResolved).collect(Collectors.toList());
+	}
+
+	public List<Artifact> downloadAllArtifactsTo(Collection<Artifact> list, String repositoryPath) {
+		return downloadAll(list, repositoryPath).stream().map(DownloadResult::getResolved)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Download all the given artifacts concurrently to {@code repositoryPath}, or
+	 * to the default local repository if null. A failed download doesn't abort
+	 * the others.
+	 * 
+	 * @return the outcome of every download, in input order
+	 */
+	public List<DownloadResult> downloadAll(Collection<Artifact> list, String repositoryPath) {
+		RepositorySystemSession batchSession = sessionFor(repositoryPath);
+		List<Artifact> artifacts = new ArrayList<>(list);
+		List<Future<DownloadResult>> futures = new ArrayList<>(artifacts.size());
+		for (Artifact artifact : artifacts)
+			futures.add(executor.submit(() -> download(artifact, batchSession)));
+
+		List<DownloadResult> res = new ArrayList<>(artifacts.size());
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				res.add(futures.get(i).get());
+			} catch (InterruptedException e) {
+				futures.forEach(future -> future.cancel(true));
+				Thread.currentThread().interrupt();
+				for (int j = i; j < artifacts.size(); j++)
+					res.add(DownloadResult.failure(artifacts.get(j), "Interrupted"));
+				break;
+			} catch (ExecutionException e) {
+				res.add(DownloadResult.failure(artifacts.get(i), String.valueOf(e.getCause())));
+			}
+		}
+
+		long failures = res.stream().filter(result -> !result.isSuccess()).count();
+		if (failures > 0)
+			System.err.println("Couldn't download " + failures + " of " + res.size() + " artifacts");
+		return res;
+	}
+
+	// Sessions are safe to share between concurrent downloads
+	private RepositorySystemSession sessionFor(String repositoryPath) {
+		if (repositoryPath == null)
+			return session;
+		return sessions.computeIfAbsent(repositoryPath, path -> Aether.newSession(system, path, sessionData));
+	}
+
+	// Skip artifacts the journal of the repository records as downloaded and
+	// unchanged, and record the outcome of the others
+	private DownloadResult download(Artifact artifact, RepositorySystemSession session) {
+		DownloadJournal journal = DownloadJournal.open(session.getLocalRepository().getBasedir().toPath());
+		File verified = journal.verified(artifact);
+		if (verified != null)
+			return DownloadResult.success(artifact, artifact.setFile(verified));
+		File stale = journal.stale(artifact);
+		if (stale != null && !stale.delete())
+			System.err.println("Couldn't remove modified download " + stale);
+
+		DownloadResult result = resolve(artifact, session);
+		// Interrupted channels can't be written to, and the artifact will be retried
+		if (!Thread.currentThread().isInterrupted())
+			journal.record(result, result.isSuccess() ? checksumOf(result.getResolved()) : null);
+		return result;
+	}
+
+	private DownloadResult resolve(Artifact artifact, RepositorySystemSession session) {
 		//if (!artifact.getClassifier().equals("sources")) {
 		//	Artifact art = new DefaultArtifact(artifact.getGroupId(), artifact.getArtifactId(), "sources", "jar", artifact.getVersion());
 		//	downloadArtifactTo(art, repositoryPath);
 		//}
+		// Already downloaded, possibly to another repository
+		if (store != null) {
+			Path target = targetOf(artifact, session);
+			try {
+				if (store.materialize(artifact, target))
+					return DownloadResult.success(artifact, artifact.setFile(target.toFile()));
+			} catch (IOException e) {
+				System.err.println("Couldn't link " + artifact + " from the artifact store: " + e);
+			}
+		}
+
+		DownloadResult result = mirrors.size() == 1
+				? resolveFrom(new Attempt(mirrors.get(0)), artifact, session, Integer.MAX_VALUE, new AtomicBoolean())
+				: hedge(artifact, session);
+		if (result.isSuccess() && store != null)
+			store(result.getResolved());
+		return result;
+	}
+
+	// Ask the best mirror first, and the next one whenever the latest request is
+	// slower than usual for its mirror, or failed. Each request downloads to its
+	// own staging repository, so that the losers can't overwrite the winner.
+	private DownloadResult hedge(Artifact artifact, RepositorySystemSession session) {
+		// Staging repositories don't see what the destination already holds
+		DownloadResult existing = existing(artifact, session);
+		if (existing != null)
+			return existing;
+
+		List<Mirror> ranked = ranked();
+		BlockingQueue<Attempt> finishedAttempts = new LinkedBlockingQueue<>();
+		// Set by the first successful download, or once we gave up
+		AtomicBoolean done = new AtomicBoolean();
+		DownloadResult failure = null;
+		int launched = 0;
+		int finished = 0;
+		try {
+			Attempt latest = launch(ranked.get(launched++), artifact, done, finishedAttempts);
+			while (finished < launched) {
+				Attempt attempt;
+				if (launched < ranked.size()) {
+					// The deadline moves as the request gets sent, then answered
+					long wait = latest.deadline(HEDGE_PERCENTILE) - System.currentTimeMillis();
+					attempt = finishedAttempts.poll(Math.max(0, Math.min(wait, HEDGE_POLL)), TimeUnit.MILLISECONDS);
+					if (attempt == null) {
+						if (System.currentTimeMillis() >= latest.deadline(HEDGE_PERCENTILE)) {
+							System.out.println("Hedging the download of " + artifact + " with " + ranked.get(launched));
+							latest = launch(ranked.get(launched++), artifact, done, finishedAttempts);
+						}
+						continue;
+					}
+				} else
+					attempt = finishedAttempts.take();
+
+				finished++;
+				if (attempt.outcome.isSuccess()) {
+					try {
+						return promote(attempt.outcome, session);
+					} finally {
+						attempt.cleanup();
+					}
+				}
+				failure = attempt.outcome;
+				if (launched < ranked.size())
+					latest = launch(ranked.get(launched++), artifact, done, finishedAttempts);
+			}
+			return failure;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return DownloadResult.failure(artifact, "Interrupted");
+		} finally {
+			done.set(true);
+		}
+	}
+
+	// The artifact already in the destination repository, e.g. downloaded by
+	// Maven or by an earlier run, if it matches its published checksum
+	private static DownloadResult existing(Artifact artifact, RepositorySystemSession session) {
+		Path target = targetOf(artifact, session);
+		String published = ArtifactStore.publishedChecksum(target);
+		if (published == null || !Files.isRegularFile(target))
+			return null;
+		try {
+			if (published.equalsIgnoreCase(ArtifactStore.sha1(target)))
+				return DownloadResult.success(artifact, artifact.setFile(target.toFile()));
+		} catch (IOException e) {
+			System.err.println("Couldn't verify existing download " + target + ": " + e);
+		}
+		return null;
+	}
+
+	private Attempt launch(Mirror mirror, Artifact artifact, AtomicBoolean done, BlockingQueue<Attempt> finished) {
+		Attempt attempt = new Attempt(mirror);
+		DefaultRepositorySystemSession staging;
+		try {
+			attempt.staging = Files.createTempDirectory(stagingRoot(), "mirror-" + mirrors.indexOf(mirror) + "-");
+			staging = (DefaultRepositorySystemSession) Aether.newSession(system, attempt.staging.toString(),
+					sessionData);
+		} catch (IOException e) {
+			attempt.outcome = DownloadResult.failure(artifact, "Couldn't create staging repository: " + e);
+			finished.add(attempt);
+			return attempt;
+		}
+
+		// Time the answer to the artifact itself, not to its checksums
+		File file = targetOf(artifact, staging).toFile().getAbsoluteFile();
+		staging.setTransferListener(new AbstractTransferListener() {
+			@Override
+			public void transferStarted(TransferEvent event) {
+				if (file.equals(event.getResource().getFile().getAbsoluteFile()))
+					attempt.onStarted(event.getResource().getContentLength());
+			}
+		});
+
+		hedges.submit(() -> {
+			DownloadResult outcome;
+			try {
+				outcome = resolveFrom(attempt, artifact, staging, MAX_HEDGED_ATTEMPTS, done);
+			} catch (RuntimeException e) {
+				outcome = DownloadResult.failure(artifact, String.valueOf(e));
+			}
+
+			// Only the first successful download is kept, and promoted by hedge()
+			attempt.outcome = outcome;
+			if (outcome.isSuccess() && done.compareAndSet(false, true)) {
+				finished.add(attempt);
+				return;
+			}
+			attempt.cleanup();
+			if (!outcome.isSuccess())
+				finished.add(attempt);
+		});
+		return attempt;
+	}
+
+	// Private to this process, outside of any dataset
+	private synchronized Path stagingRoot() throws IOException {
+		if (stagingRoot == null) {
+			stagingRoot = Files.createTempDirectory("aethereal-staging-");
+			// Along with the requests still running, which nobody waits for
+			File root = stagingRoot.toFile();
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> FileUtils.deleteQuietly(root)));
+		}
+		return stagingRoot;
+	}
+
+	// Move the winning download from its staging repository to its destination
+	private DownloadResult promote(DownloadResult outcome, RepositorySystemSession session) {
+		Path staged = outcome.getResolved().getFile().toPath();
+		Path target = targetOf(outcome.getArtifact(), session);
+		try {
+			Files.createDirectories(target.toAbsolutePath().getParent());
+			Path checksum = staged.resolveSibling(staged.getFileName() + ".sha1");
+			if (Files.exists(checksum))
+				move(checksum, target.resolveSibling(target.getFileName() + ".sha1"));
+			move(staged, target);
+			return DownloadResult.success(outcome.getArtifact(), outcome.getResolved().setFile(target.toFile()));
+		} catch (IOException e) {
+			return DownloadResult.failure(outcome.getArtifact(), "Couldn't move " + staged + " to " + target + ": " + e);
+		}
+	}
+
+	private static void move(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			// Another file system: copy next to the target first, so that readers
+			// never observe a partial file
+			Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(),
+					".tmp");
+			Files.copy(source, tmp, StandardCopyOption.REPLACE_EXISTING);
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			Files.delete(source);
+		}
+	}
+
+	// Mirrors that never served anything first, to measure them, then the
+	// fastest ones
+	private List<Mirror> ranked() {
+		List<Mirror> ret = new ArrayList<>(mirrors);
+		ret.sort(Comparator.comparingDouble(
+				mirror -> Double.isNaN(mirror.getThroughput()) ? Double.NEGATIVE_INFINITY : -mirror.getThroughput()));
+		return ret;
+	}
+
+	// A request to a mirror, and how far it got
+	private static class Attempt {
+		final Mirror mirror;
+		// Staging repository the mirror downloads to, if hedged
+		Path staging;
+		volatile DownloadResult outcome;
+		// Times at which the request was last sent, once past the rate limiter, and
+		// started to be answered; 0 until then
+		volatile long sent;
+		volatile long started;
+		volatile long length = -1;
+
+		Attempt(Mirror mirror) {
+			this.mirror = mirror;
+		}
+
+		void onSent() {
+			started = 0;
+			length = -1;
+			sent = System.currentTimeMillis();
+		}
+
+		void onStarted(long contentLength) {
+			length = contentLength;
+			started = System.currentTimeMillis();
+		}
+
+		void onSucceeded(long bytes) {
+			long now = System.currentTimeMillis();
+			if (started > 0)
+				mirror.onDownload(bytes, started - sent, now - started);
+			else
+				mirror.onDownload(bytes, now - sent, -1);
+		}
+
+		// When the request becomes slower than the given percentile of its mirror:
+		// its first byte is late, or the transfer of its announced length is.
+		// Requests still waiting for the rate limiter, or streaming an unknown
+		// length, aren't late.
+		long deadline(double percentile) {
+			long started = this.started;
+			long sent = this.sent;
+			if (sent == 0)
+				return Long.MAX_VALUE;
+			if (started == 0)
+				return LongMath.saturatedAdd(sent, mirror.firstByteDelay(percentile));
+			if (length < 0)
+				return Long.MAX_VALUE;
+			return LongMath.saturatedAdd(started, mirror.transferDelay(length, percentile));
+		}
+
+		void cleanup() {
+			try {
+				FileUtils.deleteDirectory(staging.toFile());
+			} catch (IOException e) {
+				System.err.println("Couldn't remove staging repository " + staging + ": " + e);
+			}
+		}
+	}
+
+	private static Path targetOf(Artifact artifact, RepositorySystemSession session) {
+		return session.getLocalRepository().getBasedir().toPath()
+				.resolve(session.getLocalRepositoryManager().getPathForLocalArtifact(artifact));
+	}
+
+	/**
+	 * Download {@code artifact} from {@code mirror}, retrying when it seems to
+	 * throttle us, until {@code done} is set
+	 */
+	private DownloadResult resolveFrom(Attempt tracked, Artifact artifact, RepositorySystemSession session,
+			int maxAttempts, AtomicBoolean done) {
+		Mirror mirror = tracked.mirror;
 		ArtifactRequest request = new ArtifactRequest();
 		request.setArtifact(artifact);
-		request.addRepository(repository);
-
+		request.addRepository(mirror.getRepository());
+		AdaptiveRateLimiter limiter = mirror.getLimiter();
 
 		//logger.info("Downloading {}", artifact);
 		// Don't kick me senpai
-		ArtifactResult artifactResult = null;
-		while (artifactResult == null) {
+		for (int attempt = 0; attempt < maxAttempts && !done.get(); attempt++) {
 			try {
-				// Throttle connections with Maven Central
-				aetherLimiter.acquire();
-				if (repositoryPath != null)
-					artifactResult = system.resolveArtifact(Aether.newSession(system, repositoryPath), request);
-				else
-					artifactResult = system.resolveArtifact(session, request);
+				// Throttle connections with the mirror
+				limiter.acquire();
+				tracked.onSent();
+				ArtifactResult artifactResult = system.resolveArtifact(session, request);
+				limiter.onSuccess();
+				// Files already in the local repository don't tell anything about the mirror
+				if (artifactResult.getRepository() instanceof RemoteRepository)
+					tracked.onSucceeded(artifactResult.getArtifact().getFile().length());
+				return DownloadResult.success(artifact, artifactResult.getArtifact());
 			} catch (ArtifactResolutionException e) {
 				Throwable root = ExceptionUtils.getRootCause(e);
 
-				// Either the artifact doesn't exist on Central, or we got kicked
+				// Either the artifact doesn't exist on the mirror, or we got kicked
 				if (root instanceof ArtifactNotFoundException) {
-					System.err.println("Artifact {} not found on Maven Central."+ artifact);
+					System.err.println("Artifact " + artifact + " not found on " + mirror.getName() + ".");
+					limiter.onSuccess();
 					// We won't get it ever
-					break;
-				} if (root instanceof NoRouteToHostException) {
-					System.err.println("We got kicked from Maven Central. Waiting 30s."+ e);
+					return DownloadResult.failure(artifact, "Not found on " + mirror.getName());
 				} else if (root instanceof MetadataNotFoundException) {
-					System.err.println("Couldn't resolve local metadata for {}."+ artifact);
+					System.err.println("Couldn't resolve local metadata for " + artifact + ".");
 					// We won't get it ever
-					break;
+					return DownloadResult.failure(artifact, "Couldn't resolve local metadata");
 				} else if (root instanceof NoRouteToHostException || root instanceof ArtifactTransferException) {
-					System.err.println("We probably got kicked from Maven Central. Waiting 30s."+ e);
+					System.err.println("We probably got kicked from " + mirror.getName() + ": " + e);
+					mirror.onFailure();
 					try {
-						Thread.sleep(1000 * 30);
+						limiter.backoff(attempt);
 					} catch (InterruptedException ee) {
-						System.err.println(ee);
 						Thread.currentThread().interrupt();
+						return DownloadResult.failure(artifact, "Interrupted");
 					}
 				} else {
-					System.err.println("Artifact {} not found on Maven Central."+ artifact);
-					break;
+					System.err.println("Artifact " + artifact + " not found on " + mirror.getName() + ".");
+					mirror.onFailure();
+					return DownloadResult.failure(artifact, String.valueOf(root));
 				}
 			}
 		}
-
-		return artifactResult != null ? artifactResult.getArtifact() : null;
-	}
-
-	public Artifact downloadArtifact(Artifact artifact) {
-		return downloadArtifactTo(artifact, null);
+		return DownloadResult.failure(artifact,
+				done.get() ? "Downloaded from another mirror" : "Gave up on " + mirror.getName());
 	}
 
-	public List<Artifact> downloadAllArtifacts(Collection<Artifact> list) {
-		return list.stream().map(this::downloadArtifact).collect(Collectors.toList());
+	private void store(Artifact resolved) {
+		Path file = resolved.getFile().toPath();
+		try {
+			store.add(resolved, file, ArtifactStore.publishedChecksum(file));
+		} catch (IOException e) {
+			System.err.println("Couldn't add " + resolved + " to the artifact store: " + e);
+		}
 	}
 
-	public List<Artifact> downloadAllArtifactsTo(Collection<Artifact> list, String repositoryPath) {
-		return list.stream().map(a -> downloadArtifactTo(a, repositoryPath)).collect(Collectors.toList());
+	private String checksumOf(Artifact resolved) {
+		String sha1 = store != null ? store.checksumOf(resolved) : null;
+		return sha1 != null ? sha1 : ArtifactStore.publishedChecksum(resolved.getFile().toPath());
 	}
 }
@@ -0,0 +1,112 @@
+package nl.cwi.swat.aethereal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.ImmutableLongArray;
+
+/**
+ * Existence index of all &lt;groupId&gt;:&lt;artifactId&gt;:&lt;version&gt;
+ * coordinates of next_all.csv. A Bloom filter answers most negative queries
+ * without touching the exact index, a sorted array of 64-bit hashes of all
+ * coordinates probed by binary search.
+ */
+public class ArtifactExistenceIndex {
+	private static final int MAGIC = 0x41455845; // "AEXE"
+	private static final double FALSE_POSITIVE_RATE = 0.01;
+	private static final HashFunction HASH = Hashing.murmur3_128();
+
+	private final BloomFilter<Long> filter;
+	private final long[] hashes;
+
+	private ArtifactExistenceIndex(BloomFilter<Long> filter, long[] hashes) {
+		this.filter = filter;
+		this.hashes = hashes;
+	}
+
+	/**
+	 * Build the index from the source and target columns of the versions file
+	 */
+	public static ArtifactExistenceIndex build(ParallelLineScanner scanner, Path versionsFile) throws IOException {
+		long[] hashes = scanner.scan(versionsFile, ImmutableLongArray::builder, (buffer, start, end, acc) -> {
+			// Each line in the form "source","target"
+			for (int i = 0; i < 2; i++) {
+				long field = CsvTokenizer.field(buffer, start, end, i);
+				if (field >= 0 && CsvTokenizer.indexOf(buffer, field, (byte) ':', 1) >= 0)
+					acc.add(hash(CsvTokenizer.string(buffer, field)));
+			}
+			return true;
+		}, (a, b) -> a.addAll(b.build())).build().toArray();
+
+		Arrays.sort(hashes);
+		int n = 0;
+		for (int i = 0; i < hashes.length; i++)
+			if (n == 0 || hashes[n - 1] != hashes[i])
+				hashes[n++] = hashes[i];
+		hashes = Arrays.copyOf(hashes, n);
+
+		return new ArtifactExistenceIndex(newFilter(hashes), hashes);
+	}
+
+	public static ArtifactExistenceIndex read(Path path) throws IOException {
+		try (InputStream fis = Files.newInputStream(path);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(fis, 1 << 16))) {
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not an artifact existence index");
+			long[] hashes = new long[in.readInt()];
+			for (int i = 0; i < hashes.length; i++)
+				hashes[i] = in.readLong();
+			BloomFilter<Long> filter = BloomFilter.readFrom(in, Funnels.longFunnel());
+			return new ArtifactExistenceIndex(filter, hashes);
+		}
+	}
+
+	public void write(Path path) throws IOException {
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (OutputStream fos = Files.newOutputStream(tmp);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(hashes.length);
+			for (long hash : hashes)
+				out.writeLong(hash);
+			filter.writeTo(out);
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public int size() {
+		return hashes.length;
+	}
+
+	public boolean contains(String coordinates) {
+		long hash = hash(coordinates);
+		return filter.mightContain(hash) && Arrays.binarySearch(hashes, hash) >= 0;
+	}
+
+	private static long hash(String coordinates) {
+		return HASH.hashString(coordinates, StandardCharsets.UTF_8).asLong();
+	}
+
+	// The filter is fed with the same 64-bit hashes as the exact index
+	private static BloomFilter<Long> newFilter(long[] hashes) {
+		BloomFilter<Long> filter = BloomFilter.create(Funnels.longFunnel(), Math.max(1, hashes.length),
+				FALSE_POSITIVE_RATE);
+		for (long hash : hashes)
+			filter.put(hash);
+		return filter;
+	}
+}
@@ -0,0 +1,266 @@
+package nl.cwi.swat.aethereal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.maven.artifact.versioning.ComparableVersion;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Ordering;
+import com.google.common.primitives.ImmutableIntArray;
+import com.google.common.primitives.ImmutableLongArray;
+
+/**
+ * Columnar statistics table of the Maven Dependency Graph, computed in a single
+ * pass over a {@link DependencyGraphIndex}. There is one row per unversioned
+ * artifact (number of distinct compile-scope clients, number of versions, size
+ * of the JAR of its latest version when known) and one row per version (number
+ * of compile-scope clients). Every artifact of the graph gets a row, including
+ * the ones with a single version, which appear in the links or release dates
+ * but not in the version chains. The rows of the versions of an artifact are
+ * contiguous and ordered oldest first.
+ */
+public class ArtifactStatistics {
+	private static final int MAGIC = 0x41455354; // "AEST"
+	private static final int FORMAT_VERSION = 2;
+
+	public static final long UNKNOWN_SIZE = -1;
+
+	private final String[] artifacts;
+	private final int[] clients;
+	private final int[] versions;
+	private final long[] sizes;
+	private final int[] versionOffsets;
+	private final String[] versionNames;
+	private final int[] versionClients;
+
+	private Map<String, Integer> rows;
+
+	private ArtifactStatistics(String[] artifacts, int[] clients, int[] versions, long[] sizes, int[] versionOffsets,
+			String[] versionNames, int[] versionClients) {
+		this.artifacts = artifacts;
+		this.clients = clients;
+		this.versions = versions;
+		this.sizes = sizes;
+		this.versionOffsets = versionOffsets;
+		this.versionNames = versionNames;
+		this.versionClients = versionClients;
+	}
+
+	/**
+	 * Compute the table from the index. JAR sizes are taken from the local
+	 * repository at {@code localRepository}, for artifacts whose latest version
+	 * has been downloaded there, and are {@link #UNKNOWN_SIZE} otherwise.
+	 */
+	public static ArtifactStatistics compute(DependencyGraphIndex index, String localRepository) {
+		List<String> artifacts = new ArrayList<>();
+		ImmutableIntArray.Builder clients = ImmutableIntArray.builder();
+		ImmutableIntArray.Builder versions = ImmutableIntArray.builder();
+		ImmutableLongArray.Builder sizes = ImmutableLongArray.builder();
+		ImmutableIntArray.Builder versionOffsets = ImmutableIntArray.builder();
+		List<String> versionNames = new ArrayList<>();
+		ImmutableIntArray.Builder versionClients = ImmutableIntArray.builder();
+
+		int compile = DependencyScope.COMPILE.mask();
+		int n = index.size();
+		for (int from = 0, to; from < n; from = to) {
+			String coordinates = index.coordinatesOf(from);
+			String artifact = VersionIndex.unversioned(coordinates);
+			if (artifact.equals(coordinates)) {
+				to = from + 1;
+				continue;
+			}
+			to = index.prefixRange(artifact + ":")[1];
+			// All versions known to the graph, not only the ones of the version chains
+			Comparator<Integer> byVersion = Comparator
+					.comparing(id -> new ComparableVersion(VersionIndex.version(index.coordinatesOf(id))));
+			List<Integer> ids = IntStream.range(from, to).boxed().sorted(byVersion).collect(Collectors.toList());
+
+			Set<Integer> distinct = new HashSet<>();
+			for (int id = from; id < to; id++)
+				index.forEachClient(id, compile, distinct::add);
+
+			versionOffsets.add(versionNames.size());
+			for (int id : ids) {
+				int[] count = { 0 };
+				index.forEachClient(id, compile, client -> count[0]++);
+				versionNames.add(VersionIndex.version(index.coordinatesOf(id)));
+				versionClients.add(count[0]);
+			}
+
+			String latest = VersionIndex.version(index.coordinatesOf(ids.get(ids.size() - 1)));
+			artifacts.add(artifact);
+			clients.add(distinct.size());
+			versions.add(ids.size());
+			sizes.add(jarSize(localRepository, artifact, latest));
+		}
+		versionOffsets.add(versionNames.size());
+
+		return new ArtifactStatistics(artifacts.toArray(new String[0]), clients.build().toArray(),
+				versions.build().toArray(), sizes.build().toArray(), versionOffsets.build().toArray(),
+				versionNames.toArray(new String[0]), versionClients.build().toArray());
+	}
+
+	public static ArtifactStatistics read(Path path) throws IOException {
+		try (InputStream fis = Files.newInputStream(path);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(fis, 1 << 16))) {
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not an artifact statistics table");
+			int version = in.readInt();
+			if (version != FORMAT_VERSION)
+				throw new IOException("Unsupported statistics format version " + version);
+			int n = in.readInt();
+			int m = in.readInt();
+			String[] artifacts = new String[n];
+			int[] clients = new int[n];
+			int[] versions = new int[n];
+			long[] sizes = new long[n];
+			int[] versionOffsets = new int[n + 1];
+			String[] versionNames = new String[m];
+			int[] versionClients = new int[m];
+
+			for (int i = 0; i < n; i++)
+				artifacts[i] = in.readUTF();
+			for (int i = 0; i < n; i++)
+				clients[i] = in.readInt();
+			for (int i = 0; i < n; i++)
+				versions[i] = in.readInt();
+			for (int i = 0; i < n; i++)
+				sizes[i] = in.readLong();
+			for (int i = 0; i <= n; i++)
+				versionOffsets[i] = in.readInt();
+			for (int i = 0; i < m; i++)
+				versionNames[i] = in.readUTF();
+			for (int i = 0; i < m; i++)
+				versionClients[i] = in.readInt();
+
+			return new ArtifactStatistics(artifacts, clients, versions, sizes, versionOffsets, versionNames,
+					versionClients);
+		}
+	}
+
+	public void write(Path path) throws IOException {
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (OutputStream fos = Files.newOutputStream(tmp);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(artifacts.length);
+			out.writeInt(versionNames.length);
+			for (String artifact : artifacts)
+				out.writeUTF(artifact);
+			for (int c : clients)
+				out.writeInt(c);
+			for (int v : versions)
+				out.writeInt(v);
+			for (long s : sizes)
+				out.writeLong(s);
+			for (int o : versionOffsets)
+				out.writeInt(o);
+			for (String version : versionNames)
+				out.writeUTF(version);
+			for (int c : versionClients)
+				out.writeInt(c);
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Number of unversioned artifacts in the table
+	 */
+	public int size() {
+		return artifacts.length;
+	}
+
+	/**
+	 * Number of compile-scope clients of the given coordinates: distinct clients
+	 * of any version for unversioned coordinates, clients of that version
+	 * otherwise. Unknown coordinates have no clients.
+	 */
+	public int clientsOf(String coordinates) {
+		Integer row = rows().get(VersionIndex.unversioned(coordinates));
+		if (row == null)
+			return 0;
+		if (VersionIndex.unversioned(coordinates).equals(coordinates))
+			return clients[row];
+
+		String version = VersionIndex.version(coordinates);
+		for (int i = versionOffsets[row]; i < versionOffsets[row + 1]; i++)
+			if (versionNames[i].equals(version))
+				return versionClients[i];
+		return 0;
+	}
+
+	/**
+	 * Latest version of every artifact with at least as many clients, versions
+	 * and bytes as required by {@code query}, most used first. Artifacts of
+	 * unknown size only match queries without a size constraint.
+	 */
+	public List<Artifact> matching(MavenCollectorQuery query) {
+		List<Integer> matches = IntStream.range(0, artifacts.length)
+				.filter(i -> clients[i] >= query.getClients() && versions[i] >= query.getVersions())
+				.boxed().collect(Collectors.toList());
+		if (query.getSize() > 0) {
+			long unknown = matches.stream().filter(i -> sizes[i] == UNKNOWN_SIZE).count();
+			if (unknown > 0)
+				System.err.println("Leaving out " + unknown + " artifacts whose JAR size is unknown, as their "
+						+ "latest version wasn't downloaded");
+			matches.removeIf(i -> sizes[i] < query.getSize());
+		}
+
+		Comparator<Integer> byClients = Comparator.comparingInt(i -> clients[i]);
+		List<Integer> top = query.getLimit() > 0 ? Ordering.from(byClients).greatestOf(matches, query.getLimit())
+				: Ordering.from(byClients).reverse().sortedCopy(matches);
+
+		return top.stream().map(this::toArtifact).collect(Collectors.toList());
+	}
+
+	private Artifact toArtifact(int row) {
+		return toArtifact(artifacts[row], versionNames[versionOffsets[row + 1] - 1], clients[row], versions[row],
+				sizes[row]);
+	}
+
+	// Latest version of an artifact, carrying its statistics as properties
+	static Artifact toArtifact(String artifact, String latest, int clients, int versions, long size) {
+		Map<String, String> properties = ImmutableMap.of("clients", String.valueOf(clients), "versions",
+				String.valueOf(versions), "size", String.valueOf(size));
+		return new DefaultArtifact(artifact + ":" + latest, properties);
+	}
+
+	private synchronized Map<String, Integer> rows() {
+		if (rows == null) {
+			rows = new HashMap<>(artifacts.length * 2);
+			for (int i = 0; i < artifacts.length; i++)
+				rows.put(artifacts[i], i);
+		}
+		return rows;
+	}
+
+	static long jarSize(String localRepository, String artifact, String version) {
+		String[] parts = artifact.split(":");
+		File jar = Paths.get(localRepository, parts[0].replace('.', '/'), parts[1], version,
+				String.format("%s-%s.jar", parts[1], version)).toFile();
+		return jar.isFile() ? jar.length() : UNKNOWN_SIZE;
+	}
+}
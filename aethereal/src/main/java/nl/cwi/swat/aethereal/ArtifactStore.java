@@ -0,0 +1,193 @@
+package nl.cwi.swat.aethereal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.aether.artifact.Artifact;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Content-addressed store of downloaded artifacts, shared by all datasets,
+ * runs and processes. Each distinct file is kept once, under objects/ab/cdef...
+ * after its SHA-1 checksum, and the index maps the coordinates of every
+ * artifact seen so far to its checksum, with one small file per artifact laid
+ * out as in a Maven repository (index/g/r/o/u/p/artifact/version/...sha1).
+ * Every file is written aside and renamed in place, so concurrent processes
+ * never observe partial files. Dataset folders and repositories only hold hard
+ * links to the stored files, or symbolic links where hard links aren't
+ * supported, so stored files must never be modified in place.
+ */
+public class ArtifactStore {
+	public static final String DEFAULT_PATH = "artifact-store";
+	private static final Map<Path, ArtifactStore> OPEN = new ConcurrentHashMap<>();
+
+	private final Path objects;
+	private final Path index;
+
+	public ArtifactStore(Path root) {
+		this.objects = root.resolve("objects");
+		this.index = root.resolve("index");
+	}
+
+	/**
+	 * The store at {@code root}, shared by all the users of this process
+	 */
+	public static ArtifactStore open(Path root) {
+		return OPEN.computeIfAbsent(root.toAbsolutePath().normalize(), ArtifactStore::new);
+	}
+
+	/**
+	 * SHA-1 checksum of {@code artifact}, or null if it was never stored
+	 */
+	public String checksumOf(Artifact artifact) {
+		try {
+			return new String(Files.readAllBytes(indexOf(artifact)), StandardCharsets.US_ASCII);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Whether the content of {@code artifact} is stored
+	 */
+	public boolean contains(Artifact artifact) {
+		String sha1 = checksumOf(artifact);
+		return sha1 != null && Files.exists(object(sha1));
+	}
+
+	/**
+	 * Link the stored content of {@code artifact} at {@code target}, replacing
+	 * any existing file
+	 *
+	 * @return false if the content isn't stored
+	 */
+	public boolean materialize(Artifact artifact, Path target) throws IOException {
+		String sha1 = checksumOf(artifact);
+		if (sha1 == null || !Files.exists(object(sha1)))
+			return false;
+
+		if (!Files.exists(target) || !Files.isSameFile(object(sha1), target))
+			link(object(sha1), target);
+		writeChecksum(target, sha1);
+		return true;
+	}
+
+	/**
+	 * Store the freshly downloaded {@code file} of {@code artifact}, and replace
+	 * it by a link to the stored copy. Identical files downloaded under other
+	 * coordinates are thus kept once.
+	 *
+	 * @param expected SHA-1 checksum published by the remote repository, or null
+	 * @return the checksum of the file
+	 * @throws IOException if the file doesn't match the expected checksum
+	 */
+	public String add(Artifact artifact, Path file, String expected) throws IOException {
+		String sha1 = sha1(file);
+		if (expected != null && !expected.equalsIgnoreCase(sha1))
+			throw new IOException("Checksum mismatch for " + file + ": expected " + expected + ", got " + sha1);
+
+		Path object = object(sha1);
+		if (!Files.exists(object)) {
+			Path tmp = reserve(object);
+			try {
+				Files.createLink(tmp, file);
+			} catch (IOException | UnsupportedOperationException e) {
+				// Another file system
+				Files.copy(file, tmp);
+			}
+			Files.move(tmp, object, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+
+		if (!Files.isSameFile(object, file))
+			link(object, file);
+
+		Path entry = indexOf(artifact);
+		Files.createDirectories(entry.getParent());
+		Path tmp = Files.createTempFile(entry.getParent(), entry.getFileName().toString(), ".tmp");
+		Files.write(tmp, sha1.getBytes(StandardCharsets.US_ASCII));
+		Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return sha1;
+	}
+
+	/**
+	 * SHA-1 checksum published by the remote repository next to {@code file}, as
+	 * stored by Aether, or null
+	 */
+	public static String publishedChecksum(Path file) {
+		Path sidecar = file.resolveSibling(file.getFileName() + ".sha1");
+		try {
+			String content = new String(Files.readAllBytes(sidecar), StandardCharsets.US_ASCII).trim();
+			// Some checksum files are followed by the file name
+			int space = content.indexOf(' ');
+			return space > 0 ? content.substring(0, space) : content;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private Path object(String sha1) {
+		return objects.resolve(sha1.substring(0, 2)).resolve(sha1.substring(2));
+	}
+
+	private Path indexOf(Artifact artifact) {
+		String name = artifact.getArtifactId() + "-" + artifact.getVersion()
+				+ (artifact.getClassifier().isEmpty() ? "" : "-" + artifact.getClassifier()) + "."
+				+ artifact.getExtension() + ".sha1";
+		return index.resolve(artifact.getGroupId().replace('.', '/')).resolve(artifact.getArtifactId())
+				.resolve(artifact.getVersion()).resolve(name);
+	}
+
+	// Unique name next to target, in this process and in any other, that doesn't
+	// exist yet so that a link can be created there
+	private static Path reserve(Path target) throws IOException {
+		Path parent = target.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path tmp = Files.createTempFile(parent, target.getFileName().toString(), ".tmp");
+		Files.delete(tmp);
+		return tmp;
+	}
+
+	// Atomically replace target by a hard link to object, or a symbolic one
+	private static void link(Path object, Path target) throws IOException {
+		Path tmp = reserve(target);
+		try {
+			Files.createLink(tmp, object);
+		} catch (IOException | UnsupportedOperationException e) {
+			Files.createSymbolicLink(tmp, object.toAbsolutePath());
+		}
+		Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void writeChecksum(Path target, String sha1) throws IOException {
+		Path sidecar = target.resolveSibling(target.getFileName() + ".sha1");
+		if (!Files.exists(sidecar))
+			Files.write(sidecar, sha1.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * SHA-1 checksum of the content of {@code file}
+	 */
+	static String sha1(Path file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+			IOUtils.skip(in, Long.MAX_VALUE);
+		}
+		return BaseEncoding.base16().lowerCase().encode(digest.digest());
+	}
+}
@@ -0,0 +1,33 @@
+package nl.cwi.swat.aethereal;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size bitset whose bits can be set concurrently
+ */
+public class AtomicBitSet {
+	private final AtomicLongArray words;
+
+	public AtomicBitSet(int size) {
+		words = new AtomicLongArray((size + 63) >>> 6);
+	}
+
+	/**
+	 * Set the given bit, returning whether it was clear
+	 */
+	public boolean set(int index) {
+		int word = index >>> 6;
+		long bit = 1L << index;
+		long old;
+		do {
+			old = words.get(word);
+			if ((old & bit) != 0)
+				return false;
+		} while (!words.compareAndSet(word, old, old | bit));
+		return true;
+	}
+
+	public boolean get(int index) {
+		return (words.get(index >>> 6) & (1L << index)) != 0;
+	}
+}
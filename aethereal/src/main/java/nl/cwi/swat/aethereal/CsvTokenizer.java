@@ -0,0 +1,140 @@
+package nl.cwi.swat.aethereal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * Allocation-free tokenizer for the lines of the Maven Dependency Graph CSV
+ * files, i.e. lines in the form "field0","field1",... where no field contains a
+ * comma or a quote. Fields are located and compared in place within the buffer
+ * handed out by {@link ParallelLineScanner}; the bounds of a field are packed in
+ * a single long, quotes excluded. Only matching fields need to be decoded.
+ */
+public final class CsvTokenizer {
+	private CsvTokenizer() {
+
+	}
+
+	/**
+	 * Bounds of the field at {@code index} in the line between {@code start} and
+	 * {@code end}, or -1 if the line has fewer fields
+	 */
+	public static long field(ByteBuffer buffer, int start, int end, int index) {
+		int from = start;
+		for (int i = 0; i < index; i++) {
+			while (from < end && buffer.get(from) != ',')
+				from++;
+			if (from >= end)
+				return -1;
+			from++;
+		}
+		int to = from;
+		while (to < end && buffer.get(to) != ',')
+			to++;
+
+		if (to - from >= 2 && buffer.get(from) == '"' && buffer.get(to - 1) == '"') {
+			from++;
+			to--;
+		}
+		return ((long) from << 32) | to;
+	}
+
+	public static int start(long field) {
+		return (int) (field >>> 32);
+	}
+
+	public static int end(long field) {
+		return (int) field;
+	}
+
+	public static int length(long field) {
+		return end(field) - start(field);
+	}
+
+	public static boolean equals(ByteBuffer buffer, long field, byte[] value) {
+		return field >= 0 && length(field) == value.length && regionMatches(buffer, start(field), value);
+	}
+
+	public static boolean startsWith(ByteBuffer buffer, long field, byte[] prefix) {
+		return field >= 0 && length(field) >= prefix.length && regionMatches(buffer, start(field), prefix);
+	}
+
+	/**
+	 * Offset of the {@code n}-th occurrence of {@code b} within the field, or -1
+	 */
+	public static int indexOf(ByteBuffer buffer, long field, byte b, int n) {
+		int count = 0;
+		for (int i = start(field); i < end(field); i++)
+			if (buffer.get(i) == b && ++count == n)
+				return i;
+		return -1;
+	}
+
+	public static String string(ByteBuffer buffer, long field) {
+		return ParallelLineScanner.line(buffer, start(field), end(field));
+	}
+
+	private static boolean regionMatches(ByteBuffer buffer, int from, byte[] value) {
+		for (int i = 0; i < value.length; i++)
+			if (buffer.get(from + i) != value[i])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Open-addressing table of UTF-8 keys that can be probed with a region of a
+	 * buffer without decoding it
+	 */
+	public static class KeyTable {
+		private final byte[][] keys;
+		private final int[] slots;
+		private final int mask;
+
+		public KeyTable(Collection<String> keys) {
+			this.keys = new byte[keys.size()][];
+			int capacity = Integer.highestOneBit(Math.max(2, keys.size() * 2) - 1) << 1;
+			this.slots = new int[capacity];
+			this.mask = capacity - 1;
+
+			int i = 0;
+			for (String key : keys) {
+				byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+				this.keys[i] = bytes;
+				int slot = hash(bytes) & mask;
+				while (slots[slot] != 0)
+					slot = (slot + 1) & mask;
+				// Slots hold key indexes shifted by one, 0 denotes an empty slot
+				slots[slot] = ++i;
+			}
+		}
+
+		/**
+		 * Index of the key equal to the region [from, to) of the buffer, in the
+		 * iteration order of the collection this table was built from, or -1
+		 */
+		public int find(ByteBuffer buffer, int from, int to) {
+			int h = 1;
+			for (int i = from; i < to; i++)
+				h = 31 * h + buffer.get(i);
+
+			for (int slot = mix(h) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+				byte[] key = keys[slots[slot] - 1];
+				if (key.length == to - from && regionMatches(buffer, from, key))
+					return slots[slot] - 1;
+			}
+			return -1;
+		}
+
+		private static int hash(byte[] bytes) {
+			int h = 1;
+			for (byte b : bytes)
+				h = 31 * h + b;
+			return mix(h);
+		}
+
+		private static int mix(int h) {
+			return h ^ (h >>> 16);
+		}
+	}
+}
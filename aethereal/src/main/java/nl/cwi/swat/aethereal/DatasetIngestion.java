@@ -0,0 +1,238 @@
+package nl.cwi.swat.aethereal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.function.Consumer;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.ClosedInputStream;
+import org.apache.commons.io.input.TeeInputStream;
+
+import com.google.common.base.Strings;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Ingests the archive of the Maven Dependency Graph in a single streaming
+ * pass: the .tar.xz is decompressed as it is downloaded, and every line of its
+ * CSV files is both written to the dataset path and fed to a
+ * {@link DependencyGraphIndexBuilder}.
+ *
+ * Downloaded bytes are appended to a partial file, so an interrupted ingestion
+ * resumes with a ranged request after replaying what was already downloaded.
+ * The MD5 checksum of the whole archive is verified, when known, before the
+ * partial file is kept as the complete archive. Complete local archives (or
+ * a local file standing in for the remote one) made of several XZ blocks are
+ * decoded in parallel.
+ */
+public class DatasetIngestion {
+	public static final String LINKS_CSV = "links_all.csv";
+	public static final String VERSIONS_CSV = "next_all.csv";
+	public static final String RELEASES_CSV = "release_all.csv";
+
+	private static final String ENTRY_PREFIX = "maven-data.csv/";
+	private static final String ARCHIVE = "archive.tar.xz";
+	private static final int TIMEOUT = 5000;
+
+	private final String source;
+	private final String md5;
+	private final Path datasetPath;
+
+	/**
+	 * @param source      URL of the archive, or path of a local copy
+	 * @param md5         expected MD5 checksum of the archive (hex, optionally
+	 *                    prefixed with "md5:"), or null to skip verification
+	 * @param datasetPath where the CSV files and the archive are stored
+	 */
+	public DatasetIngestion(String source, String md5, Path datasetPath) {
+		this.source = source;
+		this.md5 = Strings.isNullOrEmpty(md5) ? null : md5.replaceFirst("^md5:", "").toLowerCase();
+		this.datasetPath = datasetPath;
+	}
+
+	/**
+	 * Extract the CSV files of the dataset and build the binary index at
+	 * {@code index} in the same pass
+	 */
+	public void ingest(Path index) throws IOException {
+		Files.createDirectories(datasetPath);
+		DependencyGraphIndexBuilder builder = new DependencyGraphIndexBuilder();
+
+		Path archive = localSource();
+		if (archive == null && Files.exists(datasetPath.resolve(ARCHIVE)))
+			archive = datasetPath.resolve(ARCHIVE);
+
+		if (archive != null) {
+			System.out.println("Ingesting local archive " + archive);
+			verify(digest(archive), archive);
+			try (InputStream xz = decompress(archive)) {
+				extract(xz, builder);
+			}
+		} else {
+			Path partial = datasetPath.resolve(ARCHIVE + ".part");
+			MessageDigest digest = newDigest();
+			try (InputStream raw = new DigestInputStream(download(partial), digest)) {
+				extract(new XZCompressorInputStream(new BufferedInputStream(new CloseShieldInputStream(raw))),
+						builder);
+				// Consume the trailing bytes the archive reader didn't need, so that the
+				// checksum covers the whole file
+				IOUtils.skip(raw, Long.MAX_VALUE);
+			}
+			try {
+				verify(digest, partial);
+			} catch (IOException e) {
+				Files.delete(partial);
+				throw e;
+			}
+			Files.move(partial, datasetPath.resolve(ARCHIVE), StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		builder.write(index);
+	}
+
+	private void extract(InputStream xz, DependencyGraphIndexBuilder builder) throws IOException {
+		TarArchiveInputStream tar = new TarArchiveInputStream(xz);
+		ArchiveEntry entry;
+		while ((entry = tar.getNextEntry()) != null) {
+			if (entry.getName().equals(ENTRY_PREFIX + LINKS_CSV))
+				extractEntry(tar, LINKS_CSV, builder::addLinkLine);
+			else if (entry.getName().equals(ENTRY_PREFIX + VERSIONS_CSV))
+				extractEntry(tar, VERSIONS_CSV, builder::addVersionLine);
+			else if (entry.getName().equals(ENTRY_PREFIX + RELEASES_CSV))
+				extractEntry(tar, RELEASES_CSV, builder::addReleaseLine);
+		}
+	}
+
+	private void extractEntry(InputStream entry, String name, Consumer<String> indexer) throws IOException {
+		System.out.println("Extracting and indexing " + name);
+		Path csv = datasetPath.resolve(name);
+		Path tmp = datasetPath.resolve(name + ".tmp");
+		BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new CloseShieldInputStream(entry), StandardCharsets.UTF_8), 1 << 16);
+		try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				writer.write(line);
+				writer.write('\n');
+				indexer.accept(line);
+			}
+		}
+		Files.move(tmp, csv, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	// Replays the partial file, then streams the rest of the archive while
+	// appending it to the partial file
+	private InputStream download(Path partial) throws IOException {
+		long offset = Files.exists(partial) ? Files.size(partial) : 0;
+
+		URLConnection connection = new URL(source).openConnection();
+		connection.setConnectTimeout(TIMEOUT);
+		connection.setReadTimeout(TIMEOUT);
+		if (offset > 0)
+			connection.setRequestProperty("Range", "bytes=" + offset + "-");
+
+		InputStream remote;
+		if (connection instanceof HttpURLConnection) {
+			int code = ((HttpURLConnection) connection).getResponseCode();
+			if (offset > 0 && code == 416) {
+				// The partial file is already complete
+				remote = new ClosedInputStream();
+			} else {
+				if (offset > 0 && code != HttpURLConnection.HTTP_PARTIAL) {
+					System.err.println("Server doesn't support resuming, restarting download of " + source);
+					offset = 0;
+				}
+				remote = connection.getInputStream();
+			}
+		} else {
+			remote = connection.getInputStream();
+			IOUtils.skip(remote, offset);
+		}
+
+		if (offset > 0)
+			System.out.println("Resuming download of " + source + " at byte " + offset);
+		else
+			System.out.println("Streaming " + source);
+
+		InputStream replay = offset > 0 ? new BoundedInputStream(Files.newInputStream(partial), offset)
+				: new ClosedInputStream();
+		OutputStream out = offset > 0
+				? Files.newOutputStream(partial, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+				: Files.newOutputStream(partial);
+		return new SequenceInputStream(replay, new TeeInputStream(remote, out, true));
+	}
+
+	private InputStream decompress(Path archive) throws IOException {
+		int blocks;
+		try {
+			blocks = ParallelXZInputStream.blockCount(archive);
+		} catch (IOException e) {
+			blocks = 1;
+		}
+
+		if (blocks > 1) {
+			System.out.println("Decoding " + blocks + " XZ blocks in parallel");
+			return new ParallelXZInputStream(archive, Runtime.getRuntime().availableProcessors());
+		}
+		return new XZCompressorInputStream(new BufferedInputStream(Files.newInputStream(archive), 1 << 16));
+	}
+
+	// Null if the source is a remote URL
+	private Path localSource() {
+		if (source.startsWith("file:"))
+			return Paths.get(URI.create(source));
+		if (!source.contains("://"))
+			return Paths.get(source);
+		return null;
+	}
+
+	private MessageDigest digest(Path archive) throws IOException {
+		MessageDigest digest = newDigest();
+		if (md5 != null) {
+			try (InputStream in = new DigestInputStream(Files.newInputStream(archive), digest)) {
+				IOUtils.skip(in, Long.MAX_VALUE);
+			}
+		}
+		return digest;
+	}
+
+	private void verify(MessageDigest digest, Path archive) throws IOException {
+		if (md5 == null)
+			return;
+
+		String actual = BaseEncoding.base16().lowerCase().encode(digest.digest());
+		if (!actual.equals(md5))
+			throw new IOException("Checksum mismatch for " + archive + ": expected " + md5 + ", got " + actual);
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package nl.cwi.swat.aethereal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Read-only view of the Maven Dependency Graph in which every coordinate is
+ * identified by an integer in [0, {@link #size()}). Implementations are safe
+ * to query from multiple threads.
+ */
+public interface DependencyGraph {
+	/**
+	 * Upper bound (exclusive) of the ids of the graph
+	 */
+	public int size();
+
+	public String coordinatesOf(int id);
+
+	/**
+	 * Id of the given coordinates, or -1 if they are not part of the graph
+	 */
+	public int lookup(String coordinates);
+
+	/**
+	 * Ids of all coordinates starting with {@code prefix}
+	 */
+	public int[] idsWithPrefix(String prefix);
+
+	/**
+	 * Feed the ids of all clients of {@code id} whose scope is in
+	 * {@code scopeMask} to {@code consumer}
+	 */
+	public void forEachClient(int id, int scopeMask, IntConsumer consumer);
+
+	/**
+	 * Id of the next version of {@code id}, or -1
+	 */
+	public int nextVersion(int id);
+
+	/**
+	 * Whether {@code id} appears in the versions file
+	 */
+	public boolean isVersioned(int id);
+
+	/**
+	 * Release date of {@code id} in epoch milliseconds, or
+	 * {@link DependencyGraphIndex#UNKNOWN_DATE}
+	 */
+	public long releaseDate(int id);
+
+	/**
+	 * Ids of all versions of the given unversioned coordinates, oldest first
+	 */
+	public default List<Integer> versionsOf(String coordinates) {
+		return versionsOf(coordinates, null, null);
+	}
+
+	/**
+	 * Ids of the versions of the given unversioned coordinates within
+	 * [lowerBound, upperBound), oldest first. Empty bounds are unbounded.
+	 */
+	public List<Integer> versionsOf(String coordinates, String lowerBound, String upperBound);
+
+	/**
+	 * Transitive clients of {@code id} through edges of the given scopes, up to
+	 * {@code depth} hops. Element i of the result holds the sorted ids first
+	 * reached at distance i + 1. Each frontier is expanded in parallel, and a
+	 * shared atomic bitset ensures that every id is reached only once.
+	 */
+	public default List<int[]> transitiveClients(int id, int depth, int scopeMask) {
+		AtomicBitSet visited = new AtomicBitSet(size());
+		visited.set(id);
+
+		List<int[]> levels = new ArrayList<>();
+		int[] frontier = { id };
+		for (int d = 0; d < depth; d++) {
+			frontier = IntStream.of(frontier).parallel().flatMap(target -> {
+				IntStream.Builder reached = IntStream.builder();
+				forEachClient(target, scopeMask, client -> {
+					if (visited.set(client))
+						reached.add(client);
+				});
+				return reached.build();
+			}).sorted().toArray();
+
+			if (frontier.length == 0)
+				break;
+			levels.add(frontier);
+		}
+		return levels;
+	}
+}
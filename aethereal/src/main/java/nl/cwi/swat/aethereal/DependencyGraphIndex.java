@@ -0,0 +1,243 @@
+package nl.cwi.swat.aethereal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import org.apache.maven.artifact.versioning.ComparableVersion;
+
+/**
+ * Read-only, memory-mapped view of the binary index written by
+ * {@link DependencyGraphIndexBuilder}. Every coordinate of the graph is interned
+ * once in a dictionary sorted on its UTF-8 bytes, and the id of a coordinate is
+ * its rank in that dictionary. The links are stored as a CSR adjacency array
+ * from targets to their sources, with one scope byte per edge, and the versions
+ * as chains of next-version ids. Within the id range of an artifact, a
+ * permutation orders ids by Maven version. Release dates are stored per id.
+ *
+ * Only absolute reads are performed on the mapped buffers, so a single index
+ * can be queried from multiple threads. Mappings don't depend on the channel
+ * that created them, so no file is held open once the index is loaded: indexes
+ * need no closing, and stay readable after their file is deleted.
+ */
+public class DependencyGraphIndex implements DependencyGraph {
+	static final int MAGIC = 0x41455448; // "AETH"
+	static final int FORMAT_VERSION = 3;
+
+	static final int STRINGS = 1;
+	static final int STRING_OFFSETS = 2;
+	static final int EDGE_OFFSETS = 3;
+	static final int EDGE_SOURCES = 4;
+	static final int EDGE_SCOPES = 5;
+	static final int NEXT_VERSIONS = 6;
+	static final int FLAGS = 7;
+	static final int VERSION_ORDER = 8;
+	static final int RELEASE_DATES = 9;
+
+	static final byte FLAG_VERSIONED = 1;
+
+	public static final long UNKNOWN_DATE = Long.MIN_VALUE;
+
+	private final int size;
+	private final ByteBuffer strings;
+	private final IntBuffer stringOffsets;
+	private final IntBuffer edgeOffsets;
+	private final IntBuffer edgeSources;
+	private final ByteBuffer edgeScopes;
+	private final IntBuffer nextVersions;
+	private final ByteBuffer flags;
+	private final IntBuffer versionOrder;
+	private final LongBuffer releaseDates;
+
+	private DependencyGraphIndex(FileChannel channel) throws IOException {
+		ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, Math.min(channel.size(), headerSize(0)));
+		if (header.remaining() < headerSize(0) || header.getInt(0) != MAGIC)
+			throw new IOException("Not a dependency graph index");
+		if (header.getInt(4) != FORMAT_VERSION)
+			throw new IOException("Unsupported index format version " + header.getInt(4));
+		size = header.getInt(8);
+		int count = header.getInt(12);
+
+		Map<Integer, ByteBuffer> sections = new HashMap<>();
+		ByteBuffer table = channel.map(MapMode.READ_ONLY, 0, headerSize(count));
+		for (int i = 0; i < count; i++) {
+			int entry = headerSize(i);
+			int tag = table.getInt(entry);
+			long offset = table.getLong(entry + 4);
+			long length = table.getLong(entry + 12);
+			sections.put(tag, channel.map(MapMode.READ_ONLY, offset, length));
+		}
+
+		strings = section(sections, STRINGS);
+		stringOffsets = section(sections, STRING_OFFSETS).asIntBuffer();
+		edgeOffsets = section(sections, EDGE_OFFSETS).asIntBuffer();
+		edgeSources = section(sections, EDGE_SOURCES).asIntBuffer();
+		edgeScopes = section(sections, EDGE_SCOPES);
+		nextVersions = section(sections, NEXT_VERSIONS).asIntBuffer();
+		flags = section(sections, FLAGS);
+		versionOrder = section(sections, VERSION_ORDER).asIntBuffer();
+		releaseDates = section(sections, RELEASE_DATES).asLongBuffer();
+	}
+
+	public static DependencyGraphIndex open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return new DependencyGraphIndex(channel);
+		}
+	}
+
+	static int headerSize(int sections) {
+		return 16 + 20 * sections;
+	}
+
+	private static ByteBuffer section(Map<Integer, ByteBuffer> sections, int tag) throws IOException {
+		ByteBuffer section = sections.get(tag);
+		if (section == null)
+			throw new IOException("Missing section " + tag + " in index");
+		return section;
+	}
+
+	/**
+	 * Number of interned coordinates
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public String coordinatesOf(int id) {
+		int from = stringOffsets.get(id);
+		byte[] bytes = new byte[stringOffsets.get(id + 1) - from];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = strings.get(from + i);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public int lookup(String coordinates) {
+		byte[] key = coordinates.getBytes(StandardCharsets.UTF_8);
+		int id = lowerBound(key);
+		return id < size && compare(id, key, false) == 0 ? id : -1;
+	}
+
+	/**
+	 * Range [from, to) of the ids whose coordinates start with {@code prefix}
+	 */
+	public int[] prefixRange(String prefix) {
+		byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+		return new int[] { lowerBound(key), upperBound(key) };
+	}
+
+	@Override
+	public int[] idsWithPrefix(String prefix) {
+		int[] range = prefixRange(prefix);
+		return IntStream.range(range[0], range[1]).toArray();
+	}
+
+	@Override
+	public void forEachClient(int id, int scopeMask, IntConsumer consumer) {
+		int to = edgeOffsets.get(id + 1);
+		for (int e = edgeOffsets.get(id); e < to; e++)
+			if (DependencyScope.matches(edgeScopes.get(e), scopeMask))
+				consumer.accept(edgeSources.get(e));
+	}
+
+	/**
+	 * Feed every incoming edge of {@code id}, whatever its scope, to
+	 * {@code consumer}
+	 */
+	void forEachEdge(int id, EdgeConsumer consumer) {
+		int to = edgeOffsets.get(id + 1);
+		for (int e = edgeOffsets.get(id); e < to; e++)
+			consumer.accept(edgeSources.get(e), edgeScopes.get(e));
+	}
+
+	@Override
+	public int nextVersion(int id) {
+		return nextVersions.get(id);
+	}
+
+	@Override
+	public boolean isVersioned(int id) {
+		return (flags.get(id) & FLAG_VERSIONED) != 0;
+	}
+
+	@Override
+	public long releaseDate(int id) {
+		return releaseDates.get(id);
+	}
+
+	@Override
+	public List<Integer> versionsOf(String coordinates, String lowerBound, String upperBound) {
+		int[] group = prefixRange(coordinates + ":");
+		int[] range = VersionIndex.range(group[0], group[1],
+				i -> new ComparableVersion(VersionIndex.version(coordinatesOf(versionOrder.get(i)))), lowerBound,
+				upperBound);
+
+		List<Integer> ret = new ArrayList<>();
+		for (int i = range[0]; i < range[1]; i++) {
+			int id = versionOrder.get(i);
+			if (isVersioned(id))
+				ret.add(id);
+		}
+		return ret;
+	}
+
+	// Unsigned comparison of the coordinates of id with key; with prefix set, any
+	// coordinates starting with key compare equal
+	private int compare(int id, byte[] key, boolean prefix) {
+		int from = stringOffsets.get(id);
+		int length = stringOffsets.get(id + 1) - from;
+		int n = Math.min(length, key.length);
+		for (int i = 0; i < n; i++) {
+			int c = (strings.get(from + i) & 0xff) - (key[i] & 0xff);
+			if (c != 0)
+				return c;
+		}
+		if (prefix && length >= key.length)
+			return 0;
+		return length - key.length;
+	}
+
+	private int lowerBound(byte[] key) {
+		int lo = 0;
+		int hi = size;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compare(mid, key, false) < 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	private int upperBound(byte[] key) {
+		int lo = 0;
+		int hi = size;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compare(mid, key, true) <= 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	interface EdgeConsumer {
+		void accept(int source, byte scope);
+	}
+}
@@ -0,0 +1,410 @@
+package nl.cwi.swat.aethereal;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.LineIterator;
+import org.apache.maven.artifact.versioning.ComparableVersion;
+
+import com.google.common.primitives.ImmutableIntArray;
+import com.google.common.primitives.ImmutableLongArray;
+import com.google.common.primitives.UnsignedBytes;
+
+/**
+ * Turns the CSV files of the Maven Dependency Graph into the binary format read
+ * by {@link DependencyGraphIndex}. Coordinates are interned as they are fed in,
+ * so each file is consumed in a single pass and in any order.
+ */
+public class DependencyGraphIndexBuilder {
+	private final Map<String, Integer> ids = new HashMap<>();
+	private final List<String> coordinates = new ArrayList<>();
+
+	private final ImmutableIntArray.Builder linkSources = ImmutableIntArray.builder();
+	private final ImmutableIntArray.Builder linkTargets = ImmutableIntArray.builder();
+	private final ByteArrayOutputStream linkScopes = new ByteArrayOutputStream();
+
+	private final ImmutableIntArray.Builder nextSources = ImmutableIntArray.builder();
+	private final ImmutableIntArray.Builder nextTargets = ImmutableIntArray.builder();
+
+	private final ImmutableIntArray.Builder releaseIds = ImmutableIntArray.builder();
+	private final ImmutableLongArray.Builder releaseDates = ImmutableLongArray.builder();
+
+	/**
+	 * Build the index at {@code index} from the links, versions and (optional)
+	 * release dates CSV files
+	 */
+	public static void build(Path links, Path versions, Path releases, Path index) throws IOException {
+		DependencyGraphIndexBuilder builder = new DependencyGraphIndexBuilder();
+		builder.readLinks(links);
+		builder.readVersions(versions);
+		if (releases.toFile().exists())
+			builder.readReleases(releases);
+		builder.write(index);
+	}
+
+	public void addLink(String source, String target, String scope) {
+		linkSources.add(intern(source));
+		linkTargets.add(intern(target));
+		linkScopes.write(DependencyScope.encode(scope));
+	}
+
+	public void addNextVersion(String older, String newer) {
+		nextSources.add(intern(older));
+		nextTargets.add(intern(newer));
+	}
+
+	/**
+	 * Record the release date of the given coordinates. Dates that can't be
+	 * parsed are ignored.
+	 */
+	public void addRelease(String coordinates, String date) {
+		long millis = parseDate(date);
+		if (millis != DependencyGraphIndex.UNKNOWN_DATE) {
+			releaseIds.add(intern(coordinates));
+			releaseDates.add(millis);
+		}
+	}
+
+	/**
+	 * Add every coordinate, link, version and release date of an existing index,
+	 * e.g. to merge a base index with its delta segments. The dates and next
+	 * versions of the last index added win.
+	 */
+	public void addIndex(DependencyGraphIndex index) {
+		int n = index.size();
+		int[] mapping = new int[n];
+		for (int id = 0; id < n; id++)
+			mapping[id] = intern(index.coordinatesOf(id));
+
+		for (int id = 0; id < n; id++) {
+			int target = mapping[id];
+			index.forEachEdge(id, (source, scope) -> {
+				linkSources.add(mapping[source]);
+				linkTargets.add(target);
+				linkScopes.write(scope);
+			});
+			if (index.nextVersion(id) >= 0) {
+				nextSources.add(target);
+				nextTargets.add(mapping[index.nextVersion(id)]);
+			}
+			if (index.releaseDate(id) != DependencyGraphIndex.UNKNOWN_DATE) {
+				releaseIds.add(target);
+				releaseDates.add(index.releaseDate(id));
+			}
+		}
+	}
+
+	public void readLinks(Path csv) throws IOException {
+		System.out.println("Indexing links from " + csv);
+		try (LineIterator it = FileUtils.lineIterator(csv.toFile(), "UTF-8")) {
+			while (it.hasNext())
+				addLinkLine(it.nextLine());
+		}
+	}
+
+	public void readVersions(Path csv) throws IOException {
+		System.out.println("Indexing versions from " + csv);
+		try (LineIterator it = FileUtils.lineIterator(csv.toFile(), "UTF-8")) {
+			while (it.hasNext())
+				addVersionLine(it.nextLine());
+		}
+	}
+
+	public void readReleases(Path csv) throws IOException {
+		System.out.println("Indexing release dates from " + csv);
+		try (LineIterator it = FileUtils.lineIterator(csv.toFile(), "UTF-8")) {
+			while (it.hasNext())
+				addReleaseLine(it.nextLine());
+		}
+	}
+
+	/**
+	 * Index a line of links_all.csv, in the form "source","target","scope"
+	 */
+	public void addLinkLine(String line) {
+		String[] fields = fields(line);
+		if (fields.length >= 3 && isCoordinate(fields[0]))
+			addLink(fields[0], fields[1], fields[2]);
+	}
+
+	/**
+	 * Index a line of next_all.csv, in the form "source","target"
+	 */
+	public void addVersionLine(String line) {
+		String[] fields = fields(line);
+		if (fields.length >= 2 && isCoordinate(fields[0]))
+			addNextVersion(fields[0], fields[1]);
+	}
+
+	/**
+	 * Index a line of release_all.csv, in the form "artifact",...,"date"
+	 */
+	public void addReleaseLine(String line) {
+		String[] fields = fields(line);
+		if (fields.length >= 2 && isCoordinate(fields[0]))
+			addRelease(fields[0], fields[fields.length >= 3 ? 2 : 1]);
+	}
+
+	/**
+	 * Write the index to {@code index}. Links added several times, by the CSV
+	 * files or by merged indexes, are only written once. The file is written next
+	 * to its destination and moved in place once complete, so readers never
+	 * observe a partial index.
+	 */
+	public void write(Path index) throws IOException {
+		int n = coordinates.size();
+		System.out.println("Writing index of " + n + " coordinates to " + index);
+
+		// Sort coordinates on their UTF-8 bytes: all versions of an artifact then
+		// form a contiguous range of ids
+		byte[][] bytes = new byte[n][];
+		for (int i = 0; i < n; i++)
+			bytes[i] = coordinates.get(i).getBytes(StandardCharsets.UTF_8);
+		Comparator<byte[]> lexicographical = UnsignedBytes.lexicographicalComparator();
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		Arrays.sort(order, (a, b) -> lexicographical.compare(bytes[a], bytes[b]));
+		int[] rank = new int[n];
+		for (int i = 0; i < n; i++)
+			rank[order[i]] = i;
+
+		int[] stringOffsets = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			long end = (long) stringOffsets[i] + bytes[order[i]].length;
+			if (end > Integer.MAX_VALUE)
+				throw new IOException("Dictionary exceeds 2GB");
+			stringOffsets[i + 1] = (int) end;
+		}
+
+		// CSR adjacency from targets to their sources, keeping file order per target
+		int[] sources = linkSources.build().toArray();
+		int[] targets = linkTargets.build().toArray();
+		byte[] scopes = linkScopes.toByteArray();
+		int[] edgeOffsets = new int[n + 1];
+		for (int target : targets)
+			edgeOffsets[rank[target] + 1]++;
+		for (int i = 0; i < n; i++)
+			edgeOffsets[i + 1] += edgeOffsets[i];
+		int[] cursor = Arrays.copyOf(edgeOffsets, n);
+		int[] edgeSources = new int[sources.length];
+		byte[] edgeScopes = new byte[sources.length];
+		for (int e = 0; e < sources.length; e++) {
+			int slot = cursor[rank[targets[e]]]++;
+			edgeSources[slot] = rank[sources[e]];
+			edgeScopes[slot] = scopes[e];
+		}
+		int m = deduplicate(edgeOffsets, edgeSources, edgeScopes);
+		edgeSources = Arrays.copyOf(edgeSources, m);
+		edgeScopes = Arrays.copyOf(edgeScopes, m);
+
+		// Version chains
+		int[] olders = nextSources.build().toArray();
+		int[] newers = nextTargets.build().toArray();
+		int[] next = new int[n];
+		byte[] flags = new byte[n];
+		Arrays.fill(next, -1);
+		for (int e = 0; e < olders.length; e++) {
+			next[rank[olders[e]]] = rank[newers[e]];
+			flags[rank[olders[e]]] |= DependencyGraphIndex.FLAG_VERSIONED;
+			flags[rank[newers[e]]] |= DependencyGraphIndex.FLAG_VERSIONED;
+		}
+
+		long[] releases = new long[n];
+		Arrays.fill(releases, DependencyGraphIndex.UNKNOWN_DATE);
+		int[] released = releaseIds.build().toArray();
+		long[] dates = releaseDates.build().toArray();
+		for (int i = 0; i < released.length; i++)
+			releases[rank[released[i]]] = dates[i];
+
+		// Order the ids of each <groupId>:<artifactId> range by Maven version
+		int[] versionOrder = new int[n];
+		for (int from = 0, to; from < n; from = to) {
+			String group = VersionIndex.unversioned(coordinates.get(order[from]));
+			for (to = from + 1; to < n; to++)
+				if (!VersionIndex.unversioned(coordinates.get(order[to])).equals(group))
+					break;
+
+			List<Integer> ids = new ArrayList<>(to - from);
+			List<ComparableVersion> versions = new ArrayList<>(to - from);
+			for (int id = from; id < to; id++) {
+				ids.add(id);
+				versions.add(new ComparableVersion(VersionIndex.version(coordinates.get(order[id]))));
+			}
+			int offset = from;
+			ids.sort(Comparator.comparing(id -> versions.get(id - offset)));
+			for (int i = 0; i < ids.size(); i++)
+				versionOrder[from + i] = ids.get(i);
+		}
+
+		List<Section> sections = new ArrayList<>();
+		sections.add(new Section(DependencyGraphIndex.STRINGS, stringOffsets[n], out -> {
+			for (int i = 0; i < n; i++)
+				out.write(bytes[order[i]]);
+		}));
+		sections.add(Section.ofInts(DependencyGraphIndex.STRING_OFFSETS, stringOffsets));
+		sections.add(Section.ofInts(DependencyGraphIndex.EDGE_OFFSETS, edgeOffsets));
+		sections.add(Section.ofInts(DependencyGraphIndex.EDGE_SOURCES, edgeSources));
+		sections.add(Section.ofBytes(DependencyGraphIndex.EDGE_SCOPES, edgeScopes));
+		sections.add(Section.ofInts(DependencyGraphIndex.NEXT_VERSIONS, next));
+		sections.add(Section.ofBytes(DependencyGraphIndex.FLAGS, flags));
+		sections.add(Section.ofInts(DependencyGraphIndex.VERSION_ORDER, versionOrder));
+		sections.add(Section.ofLongs(DependencyGraphIndex.RELEASE_DATES, releases));
+
+		writeSections(index, n, sections);
+	}
+
+	// Drop the repeated (source, scope) pairs of each target, in place, and
+	// return the new number of edges
+	private static int deduplicate(int[] edgeOffsets, int[] edgeSources, byte[] edgeScopes) {
+		Set<Long> seen = new HashSet<>();
+		int m = 0;
+		for (int target = 0; target + 1 < edgeOffsets.length; target++) {
+			int from = edgeOffsets[target];
+			int to = edgeOffsets[target + 1];
+			edgeOffsets[target] = m;
+			seen.clear();
+			for (int e = from; e < to; e++)
+				if (seen.add(edgeKey(edgeSources[e], edgeScopes[e]))) {
+					edgeSources[m] = edgeSources[e];
+					edgeScopes[m] = edgeScopes[e];
+					m++;
+				}
+		}
+		edgeOffsets[edgeOffsets.length - 1] = m;
+		return m;
+	}
+
+	/**
+	 * Identity of a link to a given target: links with the same source and scope
+	 * are duplicates
+	 */
+	static long edgeKey(int source, byte scope) {
+		return ((long) source << 8) | (scope & 0xff);
+	}
+
+	private static void writeSections(Path index, int n, List<Section> sections) throws IOException {
+		Path tmp = index.resolveSibling(index.getFileName() + ".tmp");
+		try (OutputStream fos = Files.newOutputStream(tmp);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+			// Header: magic, format version, number of coordinates, section table
+			out.writeInt(DependencyGraphIndex.MAGIC);
+			out.writeInt(DependencyGraphIndex.FORMAT_VERSION);
+			out.writeInt(n);
+			out.writeInt(sections.size());
+			long offset = DependencyGraphIndex.headerSize(sections.size());
+			for (Section section : sections) {
+				out.writeInt(section.tag);
+				out.writeLong(offset);
+				out.writeLong(section.length);
+				offset += section.length;
+			}
+
+			for (Section section : sections)
+				section.writer.write(out);
+		}
+		Files.move(tmp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private int intern(String coordinate) {
+		Integer id = ids.get(coordinate);
+		if (id == null) {
+			id = coordinates.size();
+			ids.put(coordinate, id);
+			coordinates.add(coordinate);
+		}
+		return id;
+	}
+
+	static String[] fields(String line) {
+		String[] fields = line.split(",");
+		for (int i = 0; i < fields.length; i++)
+			fields[i] = fields[i].replace("\"", "");
+		return fields;
+	}
+
+	/**
+	 * Epoch milliseconds of a release date given either as a number of
+	 * milliseconds or in ISO-8601 (instant, local date-time or date, UTC)
+	 */
+	static long parseDate(String date) {
+		String trimmed = date.trim();
+		if (!trimmed.isEmpty() && trimmed.chars().allMatch(Character::isDigit))
+			return Long.parseLong(trimmed);
+		try {
+			return Instant.parse(trimmed).toEpochMilli();
+		} catch (DateTimeParseException e) {
+			// Try the next format
+		}
+		try {
+			return LocalDateTime.parse(trimmed).toInstant(ZoneOffset.UTC).toEpochMilli();
+		} catch (DateTimeParseException e) {
+			// Try the next format
+		}
+		try {
+			return LocalDate.parse(trimmed).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return DependencyGraphIndex.UNKNOWN_DATE;
+		}
+	}
+
+	// Skips CSV headers
+	static boolean isCoordinate(String field) {
+		return field.indexOf(':') > 0;
+	}
+
+	private interface SectionWriter {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	private static class Section {
+		final int tag;
+		final long length;
+		final SectionWriter writer;
+
+		Section(int tag, long length, SectionWriter writer) {
+			this.tag = tag;
+			this.length = length;
+			this.writer = writer;
+		}
+
+		static Section ofInts(int tag, int[] values) {
+			return new Section(tag, 4L * values.length, out -> {
+				for (int v : values)
+					out.writeInt(v);
+			});
+		}
+
+		static Section ofLongs(int tag, long[] values) {
+			return new Section(tag, 8L * values.length, out -> {
+				for (long v : values)
+					out.writeLong(v);
+			});
+		}
+
+		static Section ofBytes(int tag, byte[] values) {
+			return new Section(tag, values.length, out -> out.write(values));
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package nl.cwi.swat.aethereal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+
+import org.apache.maven.artifact.versioning.ComparableVersion;
+
+/**
+ * Immutable view of a base index and the delta segments appended on top of it,
+ * as returned by {@link DependencyGraphStore#snapshot()}. The ids of segment k
+ * are offset by the sizes of the segments before it. Coordinates interned in
+ * several segments are identified by their id in the first one, and a link
+ * restated by several segments is reported once. For dates and next versions,
+ * the latest segment that knows about the coordinates wins.
+ */
+public class DependencyGraphSnapshot implements DependencyGraph {
+	private final DependencyGraphIndex[] segments;
+	private final int[] offsets;
+
+	public DependencyGraphSnapshot(List<DependencyGraphIndex> segments) {
+		this.segments = segments.toArray(new DependencyGraphIndex[0]);
+		this.offsets = new int[this.segments.length + 1];
+		for (int k = 0; k < this.segments.length; k++)
+			offsets[k + 1] = offsets[k] + this.segments[k].size();
+	}
+
+	@Override
+	public int size() {
+		return offsets[segments.length];
+	}
+
+	@Override
+	public String coordinatesOf(int id) {
+		int k = segmentOf(id);
+		return segments[k].coordinatesOf(id - offsets[k]);
+	}
+
+	@Override
+	public int lookup(String coordinates) {
+		for (int k = 0; k < segments.length; k++) {
+			int local = segments[k].lookup(coordinates);
+			if (local >= 0)
+				return offsets[k] + local;
+		}
+		return -1;
+	}
+
+	@Override
+	public int[] idsWithPrefix(String prefix) {
+		Set<Integer> ids = new LinkedHashSet<>();
+		for (int k = 0; k < segments.length; k++)
+			for (int local : segments[k].idsWithPrefix(prefix))
+				ids.add(canonical(k, local));
+		return ids.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	@Override
+	public void forEachClient(int id, int scopeMask, IntConsumer consumer) {
+		String coordinates = coordinatesOf(id);
+		Set<Long> seen = new HashSet<>();
+		for (int k = 0; k < segments.length; k++) {
+			int local = segments[k].lookup(coordinates);
+			if (local < 0)
+				continue;
+
+			int segment = k;
+			segments[k].forEachEdge(local, (source, scope) -> {
+				int client = canonical(segment, source);
+				// Duplicates are dropped as when the segments are merged
+				if (seen.add(DependencyGraphIndexBuilder.edgeKey(client, scope))
+						&& DependencyScope.matches(scope, scopeMask))
+					consumer.accept(client);
+			});
+		}
+	}
+
+	@Override
+	public int nextVersion(int id) {
+		String coordinates = coordinatesOf(id);
+		for (int k = segments.length - 1; k >= 0; k--) {
+			int local = segments[k].lookup(coordinates);
+			if (local >= 0 && segments[k].nextVersion(local) >= 0)
+				return canonical(k, segments[k].nextVersion(local));
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean isVersioned(int id) {
+		String coordinates = coordinatesOf(id);
+		for (DependencyGraphIndex segment : segments) {
+			int local = segment.lookup(coordinates);
+			if (local >= 0 && segment.isVersioned(local))
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	public long releaseDate(int id) {
+		String coordinates = coordinatesOf(id);
+		for (int k = segments.length - 1; k >= 0; k--) {
+			int local = segments[k].lookup(coordinates);
+			if (local >= 0 && segments[k].releaseDate(local) != DependencyGraphIndex.UNKNOWN_DATE)
+				return segments[k].releaseDate(local);
+		}
+		return DependencyGraphIndex.UNKNOWN_DATE;
+	}
+
+	@Override
+	public List<Integer> versionsOf(String coordinates, String lowerBound, String upperBound) {
+		Set<Integer> ids = new LinkedHashSet<>();
+		for (int k = 0; k < segments.length; k++)
+			for (int local : segments[k].versionsOf(coordinates, lowerBound, upperBound))
+				ids.add(canonical(k, local));
+
+		List<Integer> ret = new ArrayList<>(ids);
+		List<ComparableVersion> versions = ret.stream()
+				.map(id -> new ComparableVersion(VersionIndex.version(coordinatesOf(id)))).collect(Collectors.toList());
+		List<Integer> order = new ArrayList<>();
+		for (int i = 0; i < ret.size(); i++)
+			order.add(i);
+		order.sort(Comparator.comparing(versions::get));
+		return order.stream().map(ret::get).collect(Collectors.toList());
+	}
+
+	// Id of the coordinates of local id in segment k, in the first segment that
+	// interns them
+	private int canonical(int k, int local) {
+		return k == 0 ? local : lookup(segments[k].coordinatesOf(local));
+	}
+
+	private int segmentOf(int id) {
+		int k = Arrays.binarySearch(offsets, id);
+		if (k < 0)
+			return -k - 2;
+		// Skip empty segments sharing the same offset
+		while (k < segments.length - 1 && offsets[k + 1] == id)
+			k++;
+		return k;
+	}
+}
@@ -0,0 +1,229 @@
+package nl.cwi.swat.aethereal;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Dependency graph made of a base {@link DependencyGraphIndex} and of
+ * append-only delta segments, each one an index built from delta CSV files.
+ * The manifest (graph.manifest) lists the base index first, then the segments
+ * in the order they were appended, and is replaced atomically on every change.
+ *
+ * Once too many segments pile up, they are merged with the base index in the
+ * background. Segments appended during a merge are kept on top of its result.
+ * Snapshots are immutable, so readers holding one are unaffected by appends and
+ * merges. A directory must only be written to by a single store.
+ */
+public class DependencyGraphStore {
+	public static final String MANIFEST = "graph.manifest";
+	private static final int COMPACTION_THRESHOLD = 8;
+	private static final Pattern GENERATION = Pattern.compile("-(\\d+)\\.idx$");
+
+	private final Path directory;
+	private final Object compaction = new Object();
+	private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "dependency-graph-compactor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	// Replaced, never mutated, under the store's lock
+	private List<String> files;
+	private List<DependencyGraphIndex> segments;
+	private int generation;
+	private volatile DependencyGraph snapshot;
+	private Future<?> pendingCompaction;
+
+	private DependencyGraphStore(Path directory, List<String> files) throws IOException {
+		this.directory = directory;
+		this.files = files;
+		this.segments = new ArrayList<>();
+		for (String file : files) {
+			segments.add(DependencyGraphIndex.open(directory.resolve(file)));
+			Matcher m = GENERATION.matcher(file);
+			if (m.find())
+				generation = Math.max(generation, Integer.parseInt(m.group(1)));
+		}
+		publish();
+	}
+
+	/**
+	 * Whether {@code directory} holds a manifest or the base index
+	 * {@code baseName}
+	 */
+	public static boolean exists(Path directory, String baseName) {
+		return Files.exists(directory.resolve(MANIFEST)) || Files.exists(directory.resolve(baseName));
+	}
+
+	/**
+	 * Open the store in {@code directory}. Without a manifest, the store is made
+	 * of the sole base index {@code baseName}.
+	 */
+	public static DependencyGraphStore open(Path directory, String baseName) throws IOException {
+		Path manifest = directory.resolve(MANIFEST);
+		if (!Files.exists(manifest))
+			return new DependencyGraphStore(directory, Collections.singletonList(baseName));
+
+		List<String> files = new ArrayList<>();
+		for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8))
+			if (!line.trim().isEmpty())
+				files.add(line.trim());
+		if (files.isEmpty())
+			throw new IOException("Empty manifest " + manifest);
+		return new DependencyGraphStore(directory, files);
+	}
+
+	/**
+	 * Start a new store over the freshly built base index {@code baseName},
+	 * discarding the segments of any previous manifest
+	 */
+	public static DependencyGraphStore create(Path directory, String baseName) throws IOException {
+		List<String> files = Collections.singletonList(baseName);
+		writeManifest(directory, files);
+		return new DependencyGraphStore(directory, files);
+	}
+
+	/**
+	 * Consistent view of the base index and of the segments appended so far
+	 */
+	public DependencyGraph snapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Merge all segments into the base index if need be, and return it
+	 */
+	public DependencyGraphIndex compacted() throws IOException {
+		compact();
+		synchronized (this) {
+			return segments.get(0);
+		}
+	}
+
+	/**
+	 * Last time the content of the store changed
+	 */
+	public long lastModified() {
+		Path manifest = directory.resolve(MANIFEST);
+		if (Files.exists(manifest))
+			return manifest.toFile().lastModified();
+		synchronized (this) {
+			return directory.resolve(files.get(0)).toFile().lastModified();
+		}
+	}
+
+	/**
+	 * Index the given delta CSV files, which may be missing, as a new segment
+	 */
+	public synchronized void append(Path links, Path versions, Path releases) throws IOException {
+		DependencyGraphIndexBuilder builder = new DependencyGraphIndexBuilder();
+		if (Files.exists(links))
+			builder.readLinks(links);
+		if (Files.exists(versions))
+			builder.readVersions(versions);
+		if (Files.exists(releases))
+			builder.readReleases(releases);
+
+		String name = "delta-" + (++generation) + ".idx";
+		builder.write(directory.resolve(name));
+
+		List<String> names = new ArrayList<>(files);
+		names.add(name);
+		List<DependencyGraphIndex> next = new ArrayList<>(segments);
+		next.add(DependencyGraphIndex.open(directory.resolve(name)));
+		writeManifest(directory, names);
+		files = names;
+		segments = next;
+		publish();
+
+		if (segments.size() > COMPACTION_THRESHOLD)
+			compactInBackground();
+	}
+
+	/**
+	 * Schedule a merge, unless one is already pending
+	 */
+	public synchronized Future<?> compactInBackground() {
+		if (pendingCompaction != null && !pendingCompaction.isDone())
+			return pendingCompaction;
+
+		pendingCompaction = compactor.submit(() -> {
+			try {
+				compact();
+			} catch (IOException e) {
+				System.err.println("Couldn't compact dependency graph in " + directory + ": " + e);
+			}
+		});
+		return pendingCompaction;
+	}
+
+	/**
+	 * Merge the base index and the current segments into a new base index
+	 */
+	public void compact() throws IOException {
+		synchronized (compaction) {
+			List<String> merged;
+			List<DependencyGraphIndex> inputs;
+			String name;
+			synchronized (this) {
+				if (segments.size() < 2)
+					return;
+				merged = files;
+				inputs = segments;
+				name = "graph-" + (++generation) + ".idx";
+			}
+
+			System.out.println("Merging " + inputs.size() + " segments of " + directory);
+			DependencyGraphIndexBuilder builder = new DependencyGraphIndexBuilder();
+			for (DependencyGraphIndex segment : inputs)
+				builder.addIndex(segment);
+			builder.write(directory.resolve(name));
+			DependencyGraphIndex base = DependencyGraphIndex.open(directory.resolve(name));
+
+			synchronized (this) {
+				List<String> names = new ArrayList<>();
+				names.add(name);
+				names.addAll(files.subList(merged.size(), files.size()));
+				List<DependencyGraphIndex> next = new ArrayList<>();
+				next.add(base);
+				next.addAll(segments.subList(merged.size(), segments.size()));
+				writeManifest(directory, names);
+				files = names;
+				segments = next;
+				publish();
+			}
+
+			// Snapshots still referencing the merged files keep their mappings, which
+			// don't hold the files open
+			for (String file : merged) {
+				try {
+					Files.deleteIfExists(directory.resolve(file));
+				} catch (IOException e) {
+					System.err.println("Couldn't delete merged segment " + file + ": " + e);
+				}
+			}
+		}
+	}
+
+	private void publish() {
+		snapshot = segments.size() == 1 ? segments.get(0) : new DependencyGraphSnapshot(segments);
+	}
+
+	private static void writeManifest(Path directory, List<String> files) throws IOException {
+		Path manifest = directory.resolve(MANIFEST);
+		Path tmp = directory.resolve(MANIFEST + ".tmp");
+		Files.write(tmp, files, StandardCharsets.UTF_8);
+		Files.move(tmp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
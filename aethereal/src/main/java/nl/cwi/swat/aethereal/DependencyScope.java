@@ -0,0 +1,49 @@
+package nl.cwi.swat.aethereal;
+
+import java.util.Collection;
+
+/**
+ * Dependency scopes as they appear in the third column of the Maven Dependency
+ * Graph's links_all.csv. The ordinal of each scope is the byte stored in the
+ * binary index.
+ */
+public enum DependencyScope {
+	COMPILE("Compile"), PROVIDED("Provided"), RUNTIME("Runtime"), TEST("Test"), SYSTEM("System"), IMPORT("Import");
+
+	public static final byte UNKNOWN = -1;
+
+	private final String label;
+
+	DependencyScope(String label) {
+		this.label = label;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	public int mask() {
+		return 1 << ordinal();
+	}
+
+	public static int mask(Collection<DependencyScope> scopes) {
+		int mask = 0;
+		for (DependencyScope scope : scopes)
+			mask |= scope.mask();
+		return mask;
+	}
+
+	/**
+	 * Encode a scope label to the byte stored in the index, or {@link #UNKNOWN}
+	 */
+	public static byte encode(String label) {
+		for (DependencyScope scope : values())
+			if (scope.label.equalsIgnoreCase(label))
+				return (byte) scope.ordinal();
+		return UNKNOWN;
+	}
+
+	public static boolean matches(byte scope, int mask) {
+		return scope != UNKNOWN && (mask & (1 << scope)) != 0;
+	}
+}
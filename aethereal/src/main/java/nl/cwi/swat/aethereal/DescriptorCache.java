@@ -0,0 +1,102 @@
+package nl.cwi.swat.aethereal;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.Dependency;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+
+/**
+ * Persistent cache of the direct dependencies read from artifact descriptors,
+ * kept in a single embedded store file rather than in a Maven repository
+ * layout. Artifacts known to exist are remembered too, as well as artifacts
+ * that Maven Central reported missing, for a limited time, so that they aren't
+ * requested again on every run.
+ *
+ * The cache is safe to use from multiple threads; changes are committed in the
+ * background and on {@link #close()}.
+ */
+public class DescriptorCache implements Closeable {
+	private static final String DEPENDENCIES = "dependencies";
+	private static final String MISSING = "missing";
+	private static final String PRESENT = "present";
+
+	private final MVStore store;
+	private final MVMap<String, String[]> dependencies;
+	private final MVMap<String, Long> missing;
+	private final MVMap<String, Long> present;
+	private final long missingTtl;
+
+	/**
+	 * @param file       path of the store file, created if need be
+	 * @param missingTtl how long a missing artifact is considered missing
+	 */
+	public DescriptorCache(String file, long missingTtl, TimeUnit unit) {
+		this.store = new MVStore.Builder().fileName(file).compress().open();
+		this.dependencies = store.openMap(DEPENDENCIES);
+		this.missing = store.openMap(MISSING);
+		this.present = store.openMap(PRESENT);
+		this.missingTtl = unit.toMillis(missingTtl);
+	}
+
+	/**
+	 * Cached direct dependencies of {@code artifact}, or null if unknown
+	 */
+	public List<Dependency> get(Artifact artifact) {
+		String[] encoded = dependencies.get(artifact.toString());
+		if (encoded == null)
+			return null;
+
+		// Each entry in the form "scope coordinates"
+		List<Dependency> res = new ArrayList<>(encoded.length);
+		for (String dependency : encoded) {
+			int space = dependency.indexOf(' ');
+			res.add(new Dependency(new DefaultArtifact(dependency.substring(space + 1)),
+					dependency.substring(0, space)));
+		}
+		return res;
+	}
+
+	public void put(Artifact artifact, List<Dependency> deps) {
+		String[] encoded = new String[deps.size()];
+		for (int i = 0; i < encoded.length; i++)
+			encoded[i] = deps.get(i).getScope() + " " + deps.get(i).getArtifact();
+		dependencies.put(artifact.toString(), encoded);
+		missing.remove(artifact.toString());
+	}
+
+	/**
+	 * Whether {@code artifact} was reported missing less than the TTL ago
+	 */
+	public boolean isMissing(Artifact artifact) {
+		Long since = missing.get(artifact.toString());
+		return since != null && System.currentTimeMillis() - since < missingTtl;
+	}
+
+	public void markMissing(Artifact artifact) {
+		missing.put(artifact.toString(), System.currentTimeMillis());
+	}
+
+	/**
+	 * Whether {@code artifact} is known to exist. Released artifacts are never
+	 * removed from Maven Central, so this doesn't expire.
+	 */
+	public boolean isPresent(Artifact artifact) {
+		return present.containsKey(artifact.toString()) || dependencies.containsKey(artifact.toString());
+	}
+
+	public void markPresent(Artifact artifact) {
+		present.put(artifact.toString(), System.currentTimeMillis());
+		missing.remove(artifact.toString());
+	}
+
+	@Override
+	public void close() {
+		store.close();
+	}
+}
@@ -0,0 +1,198 @@
+package nl.cwi.swat.aethereal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.aether.artifact.Artifact;
+
+/**
+ * Journal of the downloads into a local repository (downloads.journal at its
+ * root), so that an interrupted batch can be resumed. Each line records the
+ * outcome of a download: status, coordinates, file relative to the repository,
+ * SHA-1 checksum, size and modification time, and error message if any. The
+ * latest line of an artifact wins.
+ *
+ * An artifact recorded as downloaded is trusted as long as its file still has
+ * the recorded size and modification time, or else the recorded checksum,
+ * without resolving it again. Failures are retried. Several processes can
+ * download into the same repository: lines are appended under an exclusive file
+ * lock, and those appended by others are read under a shared one before
+ * judging a file. The incomplete line a process may leave when it crashes
+ * while appending is terminated by the next append, and ignored.
+ */
+public class DownloadJournal {
+	public static final String JOURNAL_FILE = "downloads.journal";
+	private static final String DONE = "DONE";
+	private static final String FAILED = "FAILED";
+	private static final String NONE = "-";
+	private static final int FIELDS = 7;
+	// File locks are held by the JVM, so its threads must share a single journal
+	private static final Map<Path, DownloadJournal> OPEN = new ConcurrentHashMap<>();
+
+	private final Path repository;
+	private final Path journal;
+	private final Map<String, String[]> entries = new ConcurrentHashMap<>();
+	// Bytes of the journal read so far
+	private long position;
+
+	/**
+	 * Open the journal of the local repository {@code repository}, reading the
+	 * entries recorded so far
+	 */
+	public DownloadJournal(Path repository) {
+		this.repository = repository;
+		this.journal = repository.resolve(JOURNAL_FILE);
+		refresh();
+	}
+
+	/**
+	 * The journal of {@code repository}, shared by all the users of this process
+	 */
+	public static DownloadJournal open(Path repository) {
+		return OPEN.computeIfAbsent(repository.toAbsolutePath().normalize(), DownloadJournal::new);
+	}
+
+	/**
+	 * File of {@code artifact} if it was downloaded and is unchanged since, or
+	 * null
+	 */
+	public File verified(Artifact artifact) {
+		refresh();
+		String[] entry = entries.get(artifact.toString());
+		File file = recorded(entry);
+		return file != null && (unchanged(file, entry) || intact(file, entry)) ? file : null;
+	}
+
+	/**
+	 * File of {@code artifact} if it was downloaded but its content changed
+	 * since, or null. It must be removed before downloading the artifact again,
+	 * as Aether trusts files already in the repository.
+	 */
+	public File stale(Artifact artifact) {
+		refresh();
+		String[] entry = entries.get(artifact.toString());
+		File file = recorded(entry);
+		return file != null && file.exists() && !unchanged(file, entry) && !intact(file, entry) ? file : null;
+	}
+
+	/**
+	 * Record the outcome of a download
+	 *
+	 * @param sha1 Checksum of the downloaded file, or null
+	 */
+	public void record(DownloadResult result, String sha1) {
+		String[] entry;
+		if (result.isSuccess()) {
+			File file = result.getResolved().getFile();
+			entry = new String[] { DONE, result.getArtifact().toString(),
+					repository.toAbsolutePath().relativize(file.toPath().toAbsolutePath()).toString(),
+					sha1 != null ? sha1 : NONE, String.valueOf(file.length()), String.valueOf(file.lastModified()),
+					"" };
+		} else {
+			entry = new String[] { FAILED, result.getArtifact().toString(), NONE, NONE, "0", "0",
+					String.valueOf(result.getError()).replaceAll("[\t\r\n]", " ") };
+		}
+		entries.put(entry[1], entry);
+		append(String.join("\t", entry) + "\n");
+	}
+
+	private File recorded(String[] entry) {
+		return entry != null && entry[0].equals(DONE) ? repository.resolve(entry[2]).toFile() : null;
+	}
+
+	private static boolean unchanged(File file, String[] entry) {
+		return file.isFile() && file.length() == Long.parseLong(entry[4])
+				&& file.lastModified() == Long.parseLong(entry[5]);
+	}
+
+	// Whether file still has the recorded checksum, e.g. when downloaded again
+	// by a process whose line we didn't read yet
+	private static boolean intact(File file, String[] entry) {
+		if (!file.isFile() || entry[3].equals(NONE))
+			return false;
+		try {
+			return ArtifactStore.sha1(file.toPath()).equalsIgnoreCase(entry[3]);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	// Read the lines appended since the last time, by any process
+	private synchronized void refresh() {
+		if (!Files.exists(journal))
+			return;
+
+		try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ)) {
+			if (channel.size() <= position)
+				return;
+			FileLock lock = channel.lock(position, Long.MAX_VALUE - position, true);
+			try {
+				ByteBuffer buffer = ByteBuffer.allocate((int) (channel.size() - position));
+				while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0)
+					continue;
+				String content = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+				// The last line may still be written, or left incomplete by a crashed
+				// process until the next append terminates it
+				int end = content.lastIndexOf('\n') + 1;
+				for (String line : content.substring(0, end).split("\n")) {
+					String[] fields = line.split("\t", -1);
+					if (complete(fields))
+						entries.put(fields[1], fields);
+				}
+				position += content.substring(0, end).getBytes(StandardCharsets.UTF_8).length;
+			} finally {
+				lock.release();
+			}
+		} catch (IOException e) {
+			System.err.println("Couldn't read download journal " + journal + ": " + e);
+		}
+	}
+
+	// Whether a line was written in full, rather than cut short by a crash and
+	// terminated by the next append
+	private static boolean complete(String[] fields) {
+		if (fields.length != FIELDS || !(fields[0].equals(DONE) || fields[0].equals(FAILED)))
+			return false;
+		try {
+			Long.parseLong(fields[4]);
+			Long.parseLong(fields[5]);
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	// Threads of this process take turns, then processes lock the file
+	private synchronized void append(String line) {
+		try {
+			Files.createDirectories(repository);
+			try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE)) {
+				FileLock lock = channel.lock();
+				try {
+					long size = channel.size();
+					// Don't glue our line to the incomplete one of a crashed process
+					ByteBuffer last = ByteBuffer.allocate(1);
+					if (size > 0 && channel.read(last, size - 1) == 1 && last.get(0) != '\n')
+						line = "\n" + line;
+					ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+					while (buffer.hasRemaining())
+						size += channel.write(buffer, size);
+				} finally {
+					lock.release();
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Couldn't write download journal " + journal + ": " + e);
+		}
+	}
+}
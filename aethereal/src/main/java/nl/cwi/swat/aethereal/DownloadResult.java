@@ -0,0 +1,58 @@
+package nl.cwi.swat.aethereal;
+
+import org.eclipse.aether.artifact.Artifact;
+
+/**
+ * Outcome of the download of a single artifact by {@link AetherDownloader}:
+ * either the resolved artifact, pointing to its local file, or the reason it
+ * couldn't be downloaded.
+ */
+public class DownloadResult {
+	private final Artifact artifact;
+	private final Artifact resolved;
+	private final String error;
+
+	private DownloadResult(Artifact artifact, Artifact resolved, String error) {
+		this.artifact = artifact;
+		this.resolved = resolved;
+		this.error = error;
+	}
+
+	static DownloadResult success(Artifact artifact, Artifact resolved) {
+		return new DownloadResult(artifact, resolved, null);
+	}
+
+	static DownloadResult failure(Artifact artifact, String error) {
+		return new DownloadResult(artifact, null, error);
+	}
+
+	/**
+	 * The requested artifact
+	 */
+	public Artifact getArtifact() {
+		return artifact;
+	}
+
+	/**
+	 * The downloaded artifact, or null on failure
+	 */
+	public Artifact getResolved() {
+		return resolved;
+	}
+
+	/**
+	 * Why the download failed, or null on success
+	 */
+	public String getError() {
+		return error;
+	}
+
+	public boolean isSuccess() {
+		return resolved != null;
+	}
+
+	@Override
+	public String toString() {
+		return isSuccess() ? artifact + " -> " + resolved.getFile() : artifact + ": " + error;
+	}
+}
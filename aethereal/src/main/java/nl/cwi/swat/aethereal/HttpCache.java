@@ -0,0 +1,177 @@
+package nl.cwi.swat.aethereal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.jsoup.helper.HttpConnection;
+
+import com.google.common.base.Strings;
+
+/**
+ * On-disk cache of HTTP responses keyed by URL, kept in a single embedded store
+ * file. Entries younger than the maximum age are served without any request;
+ * older ones are revalidated with a conditional request (If-None-Match,
+ * If-Modified-Since) and only downloaded again if they changed.
+ *
+ * The cache is safe to use from multiple threads; changes are committed in the
+ * background and on {@link #close()}.
+ */
+public class HttpCache implements Closeable {
+	private static final String BODIES = "bodies";
+	private static final String VALIDATORS = "validators";
+	private static final int TIMEOUT = 10000;
+
+	private final MVStore store;
+	private final MVMap<String, byte[]> bodies;
+	// URL to { fetch time, ETag, Last-Modified }, missing validators being empty
+	private final MVMap<String, String[]> validators;
+	private final long maxAge;
+
+	/**
+	 * @param file   path of the store file, created if need be
+	 * @param maxAge how long an entry is served without revalidation, by
+	 *               default
+	 */
+	public HttpCache(String file, long maxAge, TimeUnit unit) {
+		this.store = new MVStore.Builder().fileName(file).compress().open();
+		this.bodies = store.openMap(BODIES);
+		this.validators = store.openMap(VALIDATORS);
+		this.maxAge = unit.toMillis(maxAge);
+	}
+
+	/**
+	 * Body of {@code url}, from the cache if it is fresh or still valid, or null
+	 * if the resource doesn't exist. Requests are throttled by {@code limiter}.
+	 *
+	 * @throws IOException if the request failed, or was answered with an error
+	 *                     other than 404/410
+	 */
+	public byte[] fetch(String url, AdaptiveRateLimiter limiter) throws IOException {
+		return fetch(url, maxAge, limiter);
+	}
+
+	/**
+	 * Same as {@link #fetch(String, AdaptiveRateLimiter)}, serving entries
+	 * younger than {@code maxAge} milliseconds without revalidation
+	 */
+	public byte[] fetch(String url, long maxAge, AdaptiveRateLimiter limiter) throws IOException {
+		byte[] body = bodies.get(url);
+		String[] validator = validators.get(url);
+		if (body != null && validator != null
+				&& System.currentTimeMillis() - Long.parseLong(validator[0]) < maxAge)
+			return body;
+
+		limiter.acquire();
+		HttpURLConnection connection = open(url);
+		if (body != null && validator != null) {
+			if (!validator[1].isEmpty())
+				connection.setRequestProperty("If-None-Match", validator[1]);
+			if (!validator[2].isEmpty())
+				connection.setRequestProperty("If-Modified-Since", validator[2]);
+		}
+
+		try {
+			int code = connection.getResponseCode();
+			if (code == HttpURLConnection.HTTP_NOT_MODIFIED && body != null) {
+				limiter.onSuccess();
+				validator = validator.clone();
+				validator[0] = String.valueOf(System.currentTimeMillis());
+				validators.put(url, validator);
+				return body;
+			}
+
+			body = read(connection, url, limiter);
+			if (body == null) {
+				bodies.remove(url);
+				validators.remove(url);
+				return null;
+			}
+
+			bodies.put(url, body);
+			validators.put(url, new String[] { String.valueOf(System.currentTimeMillis()),
+					Strings.nullToEmpty(connection.getHeaderField("ETag")),
+					Strings.nullToEmpty(connection.getHeaderField("Last-Modified")) });
+			return body;
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * Body of {@code url}, without any caching, or null if the resource doesn't
+	 * exist
+	 */
+	public static byte[] download(String url, AdaptiveRateLimiter limiter) throws IOException {
+		limiter.acquire();
+		HttpURLConnection connection = open(url);
+		try {
+			return read(connection, url, limiter);
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * Whether {@code url} exists, according to a HEAD request
+	 *
+	 * @throws IOException if the request failed, or was answered with an error
+	 *                     other than 404/410
+	 */
+	public static boolean exists(String url, AdaptiveRateLimiter limiter) throws IOException {
+		limiter.acquire();
+		HttpURLConnection connection = open(url);
+		connection.setRequestMethod("HEAD");
+		try {
+			int code = connection.getResponseCode();
+			if (code == HttpURLConnection.HTTP_OK) {
+				limiter.onSuccess();
+				return true;
+			}
+			if (code == HttpURLConnection.HTTP_NOT_FOUND || code == HttpURLConnection.HTTP_GONE) {
+				limiter.onSuccess();
+				return false;
+			}
+			throw new IOException("Server returned " + code + " for " + url);
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	@Override
+	public void close() {
+		store.close();
+	}
+
+	private static HttpURLConnection open(String url) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setConnectTimeout(TIMEOUT);
+		connection.setReadTimeout(TIMEOUT);
+		// Jsoup's user agent: some hosts reject the default Java one
+		connection.setRequestProperty("User-Agent", HttpConnection.DEFAULT_UA);
+		return connection;
+	}
+
+	private static byte[] read(HttpURLConnection connection, String url, AdaptiveRateLimiter limiter)
+			throws IOException {
+		int code = connection.getResponseCode();
+		if (code == HttpURLConnection.HTTP_NOT_FOUND || code == HttpURLConnection.HTTP_GONE) {
+			limiter.onSuccess();
+			return null;
+		}
+		if (code != HttpURLConnection.HTTP_OK)
+			throw new IOException("Server returned " + code + " for " + url);
+
+		try (InputStream in = connection.getInputStream()) {
+			byte[] body = IOUtils.toByteArray(in);
+			limiter.onSuccess();
+			return body;
+		}
+	}
+}
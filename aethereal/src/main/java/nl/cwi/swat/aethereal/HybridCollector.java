@@ -0,0 +1,116 @@
+package nl.cwi.swat.aethereal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.maven.artifact.versioning.ComparableVersion;
+import org.eclipse.aether.artifact.Artifact;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+
+/**
+ * The hybrid collector answers from the local copy of the Maven Dependency
+ * Graph first, and only goes to Maven Central / mvnrepository.com for what the
+ * local snapshot can't know: versions released after its latest version of an
+ * artifact, and artifacts it doesn't contain at all. Results of both sides are
+ * merged, local ones first.
+ */
+public class HybridCollector implements MavenCollector {
+	private final LocalCollector local;
+	private final AetherCollector remote;
+
+	public HybridCollector(LocalCollector local, AetherCollector remote) {
+		this.local = local;
+		this.remote = remote;
+	}
+
+	@Override
+	public List<Artifact> collectAvailableVersions(String coordinates) {
+		return collectAvailableVersions(coordinates, "", "");
+	}
+
+	@Override
+	public List<Artifact> collectAvailableVersions(String coordinates, String lowerBound, String upperBound) {
+		List<Artifact> ret = new ArrayList<>(local.collectAvailableVersions(coordinates, lowerBound, upperBound));
+
+		// Only versions from the latest one known locally can be missing
+		String from = lowerBound;
+		List<Artifact> known = local.collectAvailableVersions(coordinates);
+		if (!known.isEmpty()) {
+			String latest = known.get(known.size() - 1).getVersion();
+			if (from == null || from.isEmpty() || new ComparableVersion(latest).compareTo(new ComparableVersion(from)) > 0)
+				from = latest;
+		}
+
+		// Nothing can be missing from an empty range
+		if (upperBound != null && !upperBound.isEmpty() && from != null && !from.isEmpty()
+				&& new ComparableVersion(upperBound).compareTo(new ComparableVersion(from)) <= 0)
+			return ret;
+
+		Set<String> versions = ret.stream().map(Artifact::getVersion).collect(Collectors.toCollection(HashSet::new));
+		for (Artifact artifact : remote.collectAvailableVersions(coordinates,
+				from == null || from.isEmpty() ? "0" : from, upperBound == null ? "" : upperBound))
+			if (versions.add(artifact.getVersion()))
+				ret.add(artifact);
+
+		ret.sort(Comparator.comparing(artifact -> new ComparableVersion(artifact.getVersion())));
+		return ret;
+	}
+
+	@Override
+	public List<Artifact> collectClientsOf(Artifact artifact) {
+		if (local.checkArtifact(Aether.toCoordinates(artifact)))
+			return local.collectClientsOf(artifact);
+		return remote.collectClientsOf(artifact);
+	}
+
+	@Override
+	public Multimap<Artifact, Artifact> collectClientsOf(String coordinates) {
+		Multimap<Artifact, Artifact> ret = ArrayListMultimap.create(local.collectClientsOf(coordinates));
+
+		// Versions the snapshot doesn't contain are looked up remotely, in a single
+		// batch
+		List<Artifact> missing = collectAvailableVersions(coordinates).stream()
+				.filter(version -> !local.checkArtifact(Aether.toCoordinates(version))).collect(Collectors.toList());
+		if (!missing.isEmpty()) {
+			System.out.println("Retrieving clients of " + missing.size() + " versions of " + coordinates
+					+ " missing from the local dependency graph");
+			ret.putAll(remote.collectClientsOfVersions(missing));
+		}
+		return ret;
+	}
+
+	@Override
+	public List<Artifact> collectLibrariesMatching(MavenCollectorQuery query) {
+		return local.collectLibrariesMatching(query);
+	}
+
+	@Override
+	public boolean checkArtifact(String coordinate) {
+		return local.checkArtifact(coordinate) || remote.checkArtifact(coordinate);
+	}
+
+	@Override
+	public Map<String, Boolean> checkArtifacts(Collection<String> coordinates) {
+		Map<String, Boolean> ret = new LinkedHashMap<>();
+		List<String> missing = new ArrayList<>();
+		for (String coordinate : coordinates) {
+			boolean exists = local.checkArtifact(coordinate);
+			ret.put(coordinate, exists);
+			if (!exists)
+				missing.add(coordinate);
+		}
+
+		if (!missing.isEmpty())
+			ret.putAll(remote.checkArtifacts(missing));
+		return ret;
+	}
+}
@@ -0,0 +1,240 @@
+package nl.cwi.swat.aethereal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.maven.artifact.versioning.ComparableVersion;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Ordering;
+
+/**
+ * Collector answering queries from an embedded on-disk B-tree store (H2's
+ * MVStore, graph.mv in the dataset path) holding keyed tables derived from the
+ * Maven Dependency Graph:
+ * <ul>
+ * <li>clients: coordinates to the coordinates of their compile-scope clients</li>
+ * <li>versions: &lt;groupId&gt;:&lt;artifactId&gt; to its versions, oldest
+ * first</li>
+ * <li>artifacts: every versioned coordinates to its release date (existence
+ * table)</li>
+ * <li>libraries: &lt;groupId&gt;:&lt;artifactId&gt; to its number of distinct
+ * clients and of versions</li>
+ * </ul>
+ * The store is populated once from the CSV files, through the binary index, and
+ * then opened read-only, so a single collector can serve any number of
+ * threads.
+ */
+public class KeyValueCollector implements MavenCollector, Closeable {
+	private static final String STORE_FILE = "graph.mv";
+	private static final String INDEX_NAME = "graph.idx";
+	private static final String CLIENTS = "clients";
+	private static final String VERSIONS = "versions";
+	private static final String ARTIFACTS = "artifacts";
+	private static final String LIBRARIES = "libraries";
+
+	private final MVStore store;
+	private final MVMap<String, String[]> clients;
+	private final MVMap<String, String[]> versions;
+	private final MVMap<String, Long> artifacts;
+	private final MVMap<String, int[]> libraries;
+
+	private KeyValueCollector(MVStore store) {
+		this.store = store;
+		this.clients = store.openMap(CLIENTS);
+		this.versions = store.openMap(VERSIONS);
+		this.artifacts = store.openMap(ARTIFACTS);
+		this.libraries = store.openMap(LIBRARIES);
+	}
+
+	/**
+	 * Open the store of the dataset in {@code datasetPath}. The store is
+	 * (re)populated first if it is missing or older than the dataset's index;
+	 * the index is built from the CSV files, themselves retrieved from
+	 * {@code source} if missing.
+	 *
+	 * @param source   URL or local path of the dataset archive
+	 * @param checksum expected MD5 checksum of the archive, or null
+	 */
+	public static KeyValueCollector open(Path datasetPath, String source, String checksum) throws IOException {
+		Path file = datasetPath.resolve(STORE_FILE);
+		DependencyGraphStore index = null;
+		if (!DependencyGraphStore.exists(datasetPath, INDEX_NAME)) {
+			if (Files.exists(datasetPath.resolve(DatasetIngestion.LINKS_CSV))
+					&& Files.exists(datasetPath.resolve(DatasetIngestion.VERSIONS_CSV)))
+				DependencyGraphIndexBuilder.build(datasetPath.resolve(DatasetIngestion.LINKS_CSV),
+						datasetPath.resolve(DatasetIngestion.VERSIONS_CSV),
+						datasetPath.resolve(DatasetIngestion.RELEASES_CSV), datasetPath.resolve(INDEX_NAME));
+			else
+				new DatasetIngestion(source, checksum, datasetPath).ingest(datasetPath.resolve(INDEX_NAME));
+			index = DependencyGraphStore.create(datasetPath, INDEX_NAME);
+		}
+
+		if (index != null || !Files.exists(file)) {
+			populate(index != null ? index : DependencyGraphStore.open(datasetPath, INDEX_NAME), file);
+		} else {
+			DependencyGraphStore current = DependencyGraphStore.open(datasetPath, INDEX_NAME);
+			if (file.toFile().lastModified() < current.lastModified())
+				populate(current, file);
+		}
+
+		System.out.println("Using key-value store " + file);
+		return new KeyValueCollector(new MVStore.Builder().fileName(file.toString()).readOnly().open());
+	}
+
+	// Write every table to a temporary store, moved in place once complete
+	private static void populate(DependencyGraphStore index, Path file) throws IOException {
+		DependencyGraph graph = index.snapshot();
+		System.out.println("Populating key-value store " + file + " from " + graph.size() + " coordinates");
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.deleteIfExists(tmp);
+
+		MVStore store = new MVStore.Builder().fileName(tmp.toString()).compress().open();
+		try {
+			MVMap<String, String[]> clients = store.openMap(CLIENTS);
+			MVMap<String, String[]> versions = store.openMap(VERSIONS);
+			MVMap<String, Long> artifacts = store.openMap(ARTIFACTS);
+			MVMap<String, int[]> libraries = store.openMap(LIBRARIES);
+
+			int compile = DependencyScope.COMPILE.mask();
+			for (int id = 0; id < graph.size(); id++) {
+				String coordinates = graph.coordinatesOf(id);
+				// Coordinates restated by delta segments are handled once
+				if (graph.lookup(coordinates) != id)
+					continue;
+
+				List<String> found = new ArrayList<>();
+				graph.forEachClient(id, compile, client -> found.add(graph.coordinatesOf(client)));
+				if (!found.isEmpty())
+					clients.put(coordinates, found.toArray(new String[0]));
+				String artifact = VersionIndex.unversioned(coordinates);
+				if (artifact.equals(coordinates))
+					continue;
+
+				artifacts.put(coordinates, graph.releaseDate(id));
+				if (versions.containsKey(artifact))
+					continue;
+
+				// Single versions only appear in the links or release dates, not in the version chains
+				int[] ids = graph.idsWithPrefix(artifact + ":");
+				List<String> names = VersionIndex.sort(Arrays.stream(ids)
+						.mapToObj(version -> VersionIndex.version(graph.coordinatesOf(version)))
+						.collect(Collectors.toSet()));
+				Set<Integer> distinct = new HashSet<>();
+				for (int version : ids)
+					graph.forEachClient(version, compile, distinct::add);
+				versions.put(artifact, names.toArray(new String[0]));
+				libraries.put(artifact, new int[] { distinct.size(), names.size() });
+			}
+			store.commit();
+		} finally {
+			store.close();
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	@Override
+	public List<Artifact> collectAvailableVersions(String coordinates) {
+		return collectAvailableVersions(coordinates, null, null);
+	}
+
+	@Override
+	public List<Artifact> collectAvailableVersions(String coordinates, String lowerBound, String upperBound) {
+		List<Artifact> ret = new ArrayList<>();
+		String[] names = versions.get(coordinates);
+		if (names == null)
+			return ret;
+
+		int[] range = VersionIndex.range(0, names.length, i -> new ComparableVersion(names[i]), lowerBound,
+				upperBound);
+		for (int i = range[0]; i < range[1]; i++)
+			ret.add(toArtifact(coordinates + ":" + names[i]));
+		return ret;
+	}
+
+	@Override
+	public List<Artifact> collectClientsOf(Artifact artifact) {
+		List<Artifact> ret = new ArrayList<>();
+		String[] found = clients.get(Aether.toCoordinates(artifact));
+		if (found != null)
+			for (String client : found)
+				ret.add(toArtifact(client));
+		return ret;
+	}
+
+	@Override
+	public Multimap<Artifact, Artifact> collectClientsOf(String coordinates) {
+		Multimap<Artifact, Artifact> ret = ArrayListMultimap.create();
+		String prefix = coordinates + ":";
+		Iterator<String> keys = clients.keyIterator(prefix);
+		while (keys.hasNext()) {
+			String target = keys.next();
+			if (!target.startsWith(prefix))
+				break;
+
+			Artifact artifact = toArtifact(target);
+			for (String client : clients.get(target))
+				ret.put(artifact, toArtifact(client));
+		}
+		return ret;
+	}
+
+	@Override
+	public List<Artifact> collectLibrariesMatching(MavenCollectorQuery query) {
+		List<Artifact> matches = new ArrayList<>();
+		for (Map.Entry<String, int[]> library : libraries.entrySet()) {
+			int[] counts = library.getValue();
+			if (counts[0] < query.getClients() || counts[1] < query.getVersions())
+				continue;
+
+			String[] names = versions.get(library.getKey());
+			String latest = names[names.length - 1];
+			long size = ArtifactStatistics.jarSize(Aether.LOCAL_REPO, library.getKey(), latest);
+			if (query.getSize() <= 0 || size >= query.getSize())
+				matches.add(ArtifactStatistics.toArtifact(library.getKey(), latest, counts[0], counts[1], size));
+		}
+
+		Comparator<Artifact> byClients = Comparator.comparingInt(a -> Integer.parseInt(a.getProperty("clients", "0")));
+		return query.getLimit() > 0 ? Ordering.from(byClients).greatestOf(matches, query.getLimit())
+				: Ordering.from(byClients).reverse().sortedCopy(matches);
+	}
+
+	@Override
+	public boolean checkArtifact(String coordinate) {
+		return artifacts.containsKey(coordinate);
+	}
+
+	@Override
+	public void close() {
+		store.close();
+	}
+
+	// Artifact of the given coordinates, carrying its release date when known
+	private Artifact toArtifact(String coordinates) {
+		Artifact artifact = new DefaultArtifact(coordinates);
+		Long date = artifacts.get(coordinates);
+		if (date == null || date == DependencyGraphIndex.UNKNOWN_DATE)
+			return artifact;
+		return artifact.setProperties(Collections.singletonMap(LocalCollector.RELEASE_DATE_PROPERTY,
+				Instant.ofEpochMilli(date).toString()));
+	}
+}
@@ -39,7 +39,8 @@ import nl.cwi.swat.aethereal.rascal.RascalM3;
 public class LibraryMigration {
 	private RascalM3 extractorM3 = new RascalM3();
 
-	private AetherDownloader dowloader = new AetherDownloader(4);
+	private AetherDownloader dowloader = new AetherDownloader(new AdaptiveRateLimiter("Maven Central", 4), 4,
+			ArtifactStore.open(Paths.get(ArtifactStore.DEFAULT_PATH)));
 	private static String MAVEN_FOLDER = "temp";
 	private static String OUTPUT_FOLDER = "generate_strings";
 	
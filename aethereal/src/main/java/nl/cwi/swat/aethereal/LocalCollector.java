@@ -1,23 +1,22 @@
 package nl.cwi.swat.aethereal;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.URL;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import org.apache.commons.compress.archivers.ArchiveEntry;
-import org.apache.commons.compress.archivers.ArchiveInputStream;
-import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
-import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
-import org.apache.commons.compress.utils.IOUtils;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.LineIterator;
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.artifact.DefaultArtifact;
 
@@ -32,129 +31,361 @@ import com.google.common.collect.Multimap;
  */
 public class LocalCollector implements MavenCollector {
 
-	private static final String DATASET_PATH = "dependency-graph/";
-	private static final String VERSIONS_FILE = DATASET_PATH + "next_all.csv";
-	private static final String LINKS_FILE = DATASET_PATH + "links_all.csv";
-	private static final String RELEASE_FILE = DATASET_PATH + "release_all.csv";
-	private static final String REMOTE_DATASET = "https://zenodo.org/record/1489120/files/maven-data.csv.tar.xz";
+	public static final String DATASET_PATH = "dependency-graph/";
+	private static final String VERSIONS_FILE = DATASET_PATH + DatasetIngestion.VERSIONS_CSV;
+	private static final String LINKS_FILE = DATASET_PATH + DatasetIngestion.LINKS_CSV;
+	private static final String RELEASE_FILE = DATASET_PATH + DatasetIngestion.RELEASES_CSV;
+	private static final String INDEX_NAME = "graph.idx";
+	private static final String INDEX_FILE = DATASET_PATH + INDEX_NAME;
+	private static final String EXISTENCE_FILE = DATASET_PATH + "artifacts.idx";
+	private static final String STATISTICS_FILE = DATASET_PATH + "statistics.idx";
+	public static final String REMOTE_DATASET = "https://zenodo.org/record/1489120/files/maven-data.csv.tar.xz";
+	public static final String RELEASE_DATE_PROPERTY = "releaseDate";
 
+	private static final byte[] COMPILE = DependencyScope.COMPILE.getLabel().getBytes(StandardCharsets.UTF_8);
+
+	private final String dataset;
+	private final String checksum;
+	private final ParallelLineScanner scanner = new ParallelLineScanner();
+	private DependencyGraphStore store;
+	private VersionIndex versionIndex;
+	private ArtifactExistenceIndex existenceIndex;
+	private ArtifactStatistics statistics;
 
 	public LocalCollector() {
+		this(REMOTE_DATASET, null);
+	}
+
+	/**
+	 * @param dataset  URL or local path of the dataset archive, used when the
+	 *                 dataset hasn't been extracted yet
+	 * @param checksum expected MD5 checksum of the archive, or null
+	 */
+	public LocalCollector(String dataset, String checksum) {
+		this.dataset = dataset;
+		this.checksum = checksum;
 		retrieveDataset();
+		openIndex();
+	}
+
+	/**
+	 * Build the binary index of the dependency graph (once) so that subsequent
+	 * queries are answered from it rather than by scanning the CSV files
+	 */
+	public synchronized void buildIndex() {
+		if (store != null)
+			return;
+
+		try {
+			DependencyGraphIndexBuilder.build(Paths.get(LINKS_FILE), Paths.get(VERSIONS_FILE), Paths.get(RELEASE_FILE),
+					Paths.get(INDEX_FILE));
+			store = DependencyGraphStore.create(Paths.get(DATASET_PATH), INDEX_NAME);
+		} catch (IOException e) {
+			System.err.println("Couldn't build index " + INDEX_FILE + ": " + e);
+		}
+	}
+
+	/**
+	 * Ingest the delta CSV files (links_all.csv, next_all.csv and release_all.csv,
+	 * each optional) found in {@code delta}. They are appended to the dataset and
+	 * indexed as a new segment, without rebuilding the index; segments are merged
+	 * into the index in the background.
+	 */
+	public synchronized void update(Path delta) throws IOException {
+		buildIndex();
+		if (store == null)
+			throw new IOException("No dependency graph index to update");
+
+		Path links = delta.resolve(DatasetIngestion.LINKS_CSV);
+		Path versions = delta.resolve(DatasetIngestion.VERSIONS_CSV);
+		Path releases = delta.resolve(DatasetIngestion.RELEASES_CSV);
+		store.append(links, versions, releases);
+		appendLines(links, Paths.get(LINKS_FILE));
+		appendLines(versions, Paths.get(VERSIONS_FILE));
+		appendLines(releases, Paths.get(RELEASE_FILE));
+
+		// Derived from the CSV files or the index, hence outdated
+		versionIndex = null;
+		existenceIndex = null;
+		statistics = null;
+	}
+
+	// Append the lines of delta, except its header, to csv
+	private static void appendLines(Path delta, Path csv) throws IOException {
+		if (!Files.exists(delta))
+			return;
+
+		List<String> lines = Files.readAllLines(delta, StandardCharsets.UTF_8);
+		lines.removeIf(line -> !DependencyGraphIndexBuilder.isCoordinate(DependencyGraphIndexBuilder.fields(line)[0]));
+		Files.write(csv, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+	private void openIndex() {
+		if (store != null || !DependencyGraphStore.exists(Paths.get(DATASET_PATH), INDEX_NAME))
+			return;
+
+		try {
+			store = DependencyGraphStore.open(Paths.get(DATASET_PATH), INDEX_NAME);
+			System.out.println("Using dependency graph index " + DATASET_PATH);
+		} catch (IOException e) {
+			System.err.println("Couldn't open index in " + DATASET_PATH + ", falling back to CSV files: " + e);
+		}
+	}
+
+	// Current snapshot of the index, or null
+	private DependencyGraph graph() {
+		return store != null ? store.snapshot() : null;
 	}
 
 	@Override
 	public List<Artifact> collectAvailableVersions(String coordinates) {
+		return collectAvailableVersions(coordinates, null, null);
+	}
+
+	@Override
+	public List<Artifact> collectAvailableVersions(String coordinates, String lowerBound, String upperBound) {
 		List<Artifact> ret = new ArrayList<>();
 
-		System.out.println("Looking for {} versions in {}"+ coordinates+ VERSIONS_FILE);
-		try (LineIterator it = FileUtils.lineIterator(Paths.get(VERSIONS_FILE).toFile(), "UTF-8");
-				LineIterator it2 = FileUtils.lineIterator(Paths.get(RELEASE_FILE).toFile(), "UTF-8");) {
-			while (it.hasNext()) {
-				// Each line in the form "source","target"
-				String line = it.nextLine();
-				String[] fields = line.split(",");
-				String source = fields[0].replaceAll("\"", "");
-				String target = fields[1].replaceAll("\"", "");
-				// ':' included to avoid matching source[-more-text]
-				if (source.startsWith(coordinates + ":")) {
-					Artifact older = new DefaultArtifact(source);
-					Artifact newer = new DefaultArtifact(target);
-					if (!ret.contains(older))
-						ret.add(older);
-					if (!ret.contains(newer))
-						ret.add(newer);
-				}
-			}
-//			while(it2.hasNext()) {
-//				String line = it2.nextLine();
-//				Optional<Artifact> release = ret.stream().filter(z -> 
-//					line.split(",")[0].replaceAll("\"", "").equals(String.format("%s:%s:%s", z.getGroupId(), z.getArtifactId(), z.getVersion())
-//						)
-//					).findAny();
-//				if (release.isPresent()) {
-//					Map<String, String> propr = Maps.newHashMap();
-//					propr.put("releaseDate", line.split(",")[2]);
-//					release.get().setProperties(propr);
-//				}
-//			}
+		DependencyGraph index = graph();
+		if (index != null) {
+			for (int id : index.versionsOf(coordinates, lowerBound, upperBound))
+				ret.add(toArtifact(index, id));
 			return ret;
-		} catch (IOException e) {
-			System.err.println("Couldn't read {}"+VERSIONS_FILE+ e);
-			return Lists.newArrayList();
 		}
+
+		VersionIndex versions = versionIndex();
+		if (versions != null)
+			for (String version : versions.versionsOf(coordinates, lowerBound, upperBound))
+				ret.add(new DefaultArtifact(coordinates + ":" + version));
+		return ret;
 	}
 
-	@Override
-	public List<Artifact> collectAvailableVersions(String coordinates, String lowerBound, String upperBound) {
-		throw new UnsupportedOperationException();
+	// Built from a single scan of the versions file on first use
+	private synchronized VersionIndex versionIndex() {
+		if (versionIndex == null) {
+			System.out.println("Indexing versions from " + VERSIONS_FILE);
+			try {
+				versionIndex = VersionIndex.build(scanner, Paths.get(VERSIONS_FILE));
+			} catch (IOException e) {
+				System.err.println("Couldn't read " + VERSIONS_FILE + ": " + e);
+			}
+		}
+		return versionIndex;
 	}
 
 	@Override
 	public List<Artifact> collectClientsOf(Artifact artifact) {
 		List<Artifact> ret = new ArrayList<>();
 
-		System.out.println("Looking for clients of {} in {}"+artifact+ LINKS_FILE);
-		try (LineIterator it = FileUtils.lineIterator(Paths.get(LINKS_FILE).toFile(), "UTF-8");
-				LineIterator it2 = FileUtils.lineIterator(Paths.get(RELEASE_FILE).toFile(), "UTF-8");) {
-			while (it.hasNext()) {
-				// Each line in the form "source","target","scope"
-				String line = it.nextLine();
-				String[] fields = line.split(",");
-				String source = fields[0].replaceAll("\"", "");
-				String target = fields[1].replaceAll("\"", "");
-				String scope = fields[2].replaceAll("\"", "");
-
-				if (target.equals(Aether.toCoordinates(artifact)) && scope.equals("Compile")) {
-					ret.add(new DefaultArtifact(source));
-				}
-			}
-//			while(it2.hasNext()) {
-//				String line = it2.nextLine();
-//				Optional<Artifact> release = ret.stream().filter(z -> line.equals(String.format("%s:%s:%s", z.getGroupId(), z.getArtifactId(), z.getVersion()))).findAny();
-//				if (release.isPresent()) {
-//					Map<String, String> propr = Maps.newHashMap();
-//					propr.put("releaseDate", line.split(",")[2]);
-//					release.get().setProperties(propr);
-//				}
-//			}
+		DependencyGraph index = graph();
+		if (index != null) {
+			int id = index.lookup(Aether.toCoordinates(artifact));
+			if (id >= 0)
+				index.forEachClient(id, DependencyScope.COMPILE.mask(),
+						client -> ret.add(toArtifact(index, client)));
+			return ret;
+		}
 
+		System.out.println("Looking for clients of " + artifact + " in " + LINKS_FILE);
+		byte[] coordinates = Aether.toCoordinates(artifact).getBytes(StandardCharsets.UTF_8);
+		try {
+			List<String> found = scanner.scan(Paths.get(LINKS_FILE), ArrayList::new, (buffer, start, end, acc) -> {
+				// Each line in the form "source","target","scope"
+				if (CsvTokenizer.equals(buffer, CsvTokenizer.field(buffer, start, end, 1), coordinates)
+						&& CsvTokenizer.equals(buffer, CsvTokenizer.field(buffer, start, end, 2), COMPILE))
+					acc.add(CsvTokenizer.string(buffer, CsvTokenizer.field(buffer, start, end, 0)));
+				return true;
+			}, LocalCollector::concat);
+			found.forEach(source -> ret.add(new DefaultArtifact(source)));
 			return ret;
 		} catch (IOException e) {
-			System.err.println("Couldn't read {}"+ LINKS_FILE+ e);
+			System.err.println("Couldn't read " + LINKS_FILE + ": " + e);
 			return Lists.newArrayList();
 		}
 	}
 
+	/**
+	 * Collect the clients of the given artifact released within [from, to).
+	 * Requires the binary index, which is built if need be.
+	 */
+	public List<Artifact> collectClientsReleasedBetween(Artifact artifact, Instant from, Instant to) {
+		List<Artifact> ret = new ArrayList<>();
+		buildIndex();
+		DependencyGraph index = graph();
+		if (index == null)
+			return ret;
+
+		int id = index.lookup(Aether.toCoordinates(artifact));
+		if (id >= 0)
+			index.forEachClient(id, DependencyScope.COMPILE.mask(), client -> {
+				if (releasedWithin(index, client, from, to))
+					ret.add(toArtifact(index, client));
+			});
+		return ret;
+	}
+
+	/**
+	 * Collect the versions of the given artifact released at or after
+	 * {@code after}, oldest first. Requires the binary index, which is built if
+	 * need be.
+	 * 
+	 * @param coordinates Version-free coordinates, i.e.
+	 *                    &lt;groupId&gt;:&lt;artifactId&gt;
+	 */
+	public List<Artifact> collectVersionsReleasedAfter(String coordinates, Instant after) {
+		List<Artifact> ret = new ArrayList<>();
+		buildIndex();
+		DependencyGraph index = graph();
+		if (index == null)
+			return ret;
+
+		for (int id : index.versionsOf(coordinates))
+			if (releasedWithin(index, id, after, Instant.MAX))
+				ret.add(toArtifact(index, id));
+		return ret;
+	}
+
+	private static boolean releasedWithin(DependencyGraph index, int id, Instant from, Instant to) {
+		long date = index.releaseDate(id);
+		return date != DependencyGraphIndex.UNKNOWN_DATE && !Instant.ofEpochMilli(date).isBefore(from)
+				&& Instant.ofEpochMilli(date).isBefore(to);
+	}
+
+	// Artifact of the given id, carrying its releaseDate property when known
+	private static Artifact toArtifact(DependencyGraph index, int id) {
+		Artifact artifact = new DefaultArtifact(index.coordinatesOf(id));
+		long date = index.releaseDate(id);
+		if (date == DependencyGraphIndex.UNKNOWN_DATE)
+			return artifact;
+		return artifact.setProperties(
+				Collections.singletonMap(RELEASE_DATE_PROPERTY, Instant.ofEpochMilli(date).toString()));
+	}
+
 	@Override
 	public Multimap<Artifact, Artifact> collectClientsOf(String coordinates) {
-		Multimap<Artifact, Artifact> ret = ArrayListMultimap.create();
+		return collectClientsOf(Collections.singleton(coordinates)).get(coordinates);
+	}
 
-		System.out.println("Looking for clients of any version of {} in {}"+ coordinates+ LINKS_FILE);
-		try (LineIterator it = FileUtils.lineIterator(Paths.get(LINKS_FILE).toFile(), "UTF-8")) {
-			while (it.hasNext()) {
-				// Each line in the form "source","target","scope"
-				String line = it.nextLine();
-				String[] fields = line.split(",");
-				String source = fields[0].replaceAll("\"", "");
-				String target = fields[1].replaceAll("\"", "");
-				String scope = fields[2].replaceAll("\"", "");
-
-				if (target.startsWith(coordinates + ":") && scope.equals("Compile")) {
-					ret.put(new DefaultArtifact(target), new DefaultArtifact(source));
-				}
-			}
+	@Override
+	public Map<String, Multimap<Artifact, Artifact>> collectClientsOf(Collection<String> coordinates) {
+		Map<String, Multimap<Artifact, Artifact>> ret = new LinkedHashMap<>();
+		for (String coordinate : coordinates)
+			ret.put(coordinate, ArrayListMultimap.create());
 
+		DependencyGraph index = graph();
+		if (index != null) {
+			ret.forEach((coordinate, clients) -> {
+				for (int id : index.idsWithPrefix(coordinate + ":")) {
+					Artifact target = toArtifact(index, id);
+					index.forEachClient(id, DependencyScope.COMPILE.mask(),
+							client -> clients.put(target, toArtifact(index, client)));
+				}
+			});
 			return ret;
+		}
+
+		System.out.println("Looking for clients of any version of " + coordinates.size() + " artifacts in " + LINKS_FILE);
+		List<String> keys = new ArrayList<>(ret.keySet());
+		CsvTokenizer.KeyTable table = new CsvTokenizer.KeyTable(keys);
+		try {
+			Multimap<String, String[]> found = scanner.scan(Paths.get(LINKS_FILE), ArrayListMultimap::create,
+					(buffer, start, end, acc) -> {
+						// Each line in the form "source","target","scope"
+						if (!CsvTokenizer.equals(buffer, CsvTokenizer.field(buffer, start, end, 2), COMPILE))
+							return true;
+
+						// Hash lookup on the <groupId>:<artifactId> prefix of the target
+						long target = CsvTokenizer.field(buffer, start, end, 1);
+						int artifactEnd = CsvTokenizer.indexOf(buffer, target, (byte) ':', 2);
+						int key = artifactEnd < 0 ? -1 : table.find(buffer, CsvTokenizer.start(target), artifactEnd);
+						if (key >= 0) {
+							long source = CsvTokenizer.field(buffer, start, end, 0);
+							acc.put(keys.get(key), new String[] { CsvTokenizer.string(buffer, source),
+									CsvTokenizer.string(buffer, target) });
+						}
+						return true;
+					}, (a, b) -> {
+						a.putAll(b);
+						return a;
+					});
+			found.forEach((coordinate, link) -> ret.get(coordinate).put(new DefaultArtifact(link[1]),
+					new DefaultArtifact(link[0])));
 		} catch (IOException e) {
-			System.err.println("Couldn't read {}"+ LINKS_FILE+ e);
-			return null;
+			// Empty results would pass for artifacts without clients
+			throw new UncheckedIOException("Couldn't read " + LINKS_FILE, e);
 		}
+
+		return ret;
+	}
+
+	/**
+	 * Breadth-first search over the reverse adjacency of the index, built first
+	 * if needed, expanding each frontier in parallel
+	 */
+	@Override
+	public Map<Artifact, Integer> collectTransitiveClientsOf(Artifact artifact, int depth,
+			Set<DependencyScope> scopes) {
+		buildIndex();
+		DependencyGraph index = graph();
+		if (index == null)
+			return MavenCollector.super.collectTransitiveClientsOf(artifact, depth, scopes);
+
+		Map<Artifact, Integer> ret = new LinkedHashMap<>();
+		int id = index.lookup(Aether.toCoordinates(artifact));
+		if (id < 0)
+			return ret;
+
+		List<int[]> levels = index.transitiveClients(id, depth, DependencyScope.mask(scopes));
+		for (int d = 0; d < levels.size(); d++)
+			for (int client : levels.get(d))
+				ret.put(toArtifact(index, client), d + 1);
+		return ret;
 	}
 
 	@Override
 	public List<Artifact> collectLibrariesMatching(MavenCollectorQuery query) {
-		throw new UnsupportedOperationException("Not yet");
+		ArtifactStatistics statistics = statistics();
+		return statistics != null ? statistics.matching(query) : Lists.newArrayList();
+	}
+
+	// Loaded on first use, computed from the index (built if need be) and
+	// persisted if missing or outdated
+	private synchronized ArtifactStatistics statistics() {
+		if (statistics != null)
+			return statistics;
+
+		// Both a new dataset and an update touch the CSV files, even when the index
+		// isn't loaded yet
+		File file = new File(STATISTICS_FILE);
+		long datasetModified = Math.max(store != null ? store.lastModified() : 0,
+				Math.max(new File(LINKS_FILE).lastModified(),
+						Math.max(new File(VERSIONS_FILE).lastModified(), new File(RELEASE_FILE).lastModified())));
+		if (file.exists() && file.lastModified() >= datasetModified) {
+			try {
+				statistics = ArtifactStatistics.read(file.toPath());
+				return statistics;
+			} catch (IOException e) {
+				System.err.println("Couldn't read " + STATISTICS_FILE + ", recomputing it: " + e);
+			}
+		}
+
+		buildIndex();
+		if (store == null)
+			return null;
+
+		System.out.println("Computing artifact statistics from " + DATASET_PATH);
+		try {
+			statistics = ArtifactStatistics.compute(store.compacted(), Aether.LOCAL_REPO);
+		} catch (IOException e) {
+			System.err.println("Couldn't compact index in " + DATASET_PATH + ": " + e);
+			return null;
+		}
+		try {
+			statistics.write(file.toPath());
+		} catch (IOException e) {
+			System.err.println("Couldn't write " + STATISTICS_FILE + ": " + e);
+		}
+		return statistics;
 	}
 
 	private void retrieveDataset() {
@@ -163,39 +394,13 @@ public class LocalCollector implements MavenCollector {
 			return;
 		}
 
-		System.err.println("Couldn't find the Maven Dependency Graph. I will download and extract it for you (~1.1GB).");
+		System.err.println("Couldn't find the Maven Dependency Graph. I will download and index it for you (~1.1GB).");
 
 		try {
-//			System.err.println("Downloading archive from {} to {}"+ REMOTE_DATASET+ DATASET_PATH);
-			FileUtils.copyURLToFile(new URL(REMOTE_DATASET), new File(DATASET_PATH + "archive.tar.xz"), 5000, 5000);
-
-			System.err.println("Extracting archive locally");
-			try (InputStream fi = Files.newInputStream(Paths.get(DATASET_PATH + "archive.tar.xz"));
-					InputStream bi = new BufferedInputStream(fi);
-					InputStream xzi = new XZCompressorInputStream(bi);
-					ArchiveInputStream arch = new TarArchiveInputStream(xzi)) {
-
-				ArchiveEntry entry = null;
-				while ((entry = arch.getNextEntry()) != null) {
-					if (entry.getName().equals("maven-data.csv/links_all.csv")) {
-						try (OutputStream o = Files.newOutputStream(Paths.get(LINKS_FILE))) {
-							IOUtils.copy(arch, o);
-						} catch (IOException e) {
-							System.err.println("Couldn't write destination file"+ e);
-						}
-					} else if (entry.getName().equals("maven-data.csv/next_all.csv")) {
-						try (OutputStream o = Files.newOutputStream(Paths.get(VERSIONS_FILE))) {
-							IOUtils.copy(arch, o);
-						} catch (IOException e) {
-							System.err.println("Couldn't write destination file"+ e);
-						}
-					}
-				}
-			} catch (IOException e) {
-				System.err.println("Couldn't extract dataset archive"+ e);
-			}
+			new DatasetIngestion(dataset, checksum, Paths.get(DATASET_PATH)).ingest(Paths.get(INDEX_FILE));
+			store = DependencyGraphStore.create(Paths.get(DATASET_PATH), INDEX_NAME);
 		} catch (IOException e) {
-			System.err.println("Couldn't extract dataset archive"+ e);
+			System.err.println("Couldn't ingest dataset archive: " + e);
 		}
 	}
 
@@ -205,21 +410,42 @@ public class LocalCollector implements MavenCollector {
 
 	@Override
 	public boolean checkArtifact(String coordinate) {
-		System.out.println("Looking for {} version in {}"+ coordinate+ VERSIONS_FILE);
-		try (LineIterator it = FileUtils.lineIterator(Paths.get(VERSIONS_FILE).toFile(), "UTF-8")) {
-			while (it.hasNext()) {
-				// Each line in the form "source","target"
-				String line = it.nextLine();
-				String[] fields = line.split(",");
-				String source = fields[0].replaceAll("\"", "");
-
-				if (source.equals(coordinate))
-					return true;
+		ArtifactExistenceIndex existence = existenceIndex();
+		return existence != null && existence.contains(coordinate);
+	}
+
+	// Loaded on first use, built and persisted if missing or outdated
+	private synchronized ArtifactExistenceIndex existenceIndex() {
+		if (existenceIndex != null)
+			return existenceIndex;
+
+		File file = new File(EXISTENCE_FILE);
+		if (file.exists() && file.lastModified() >= new File(VERSIONS_FILE).lastModified()) {
+			try {
+				existenceIndex = ArtifactExistenceIndex.read(file.toPath());
+				return existenceIndex;
+			} catch (IOException e) {
+				System.err.println("Couldn't read " + EXISTENCE_FILE + ", rebuilding it: " + e);
 			}
-			return false;
+		}
+
+		System.out.println("Indexing artifacts of " + VERSIONS_FILE);
+		try {
+			existenceIndex = ArtifactExistenceIndex.build(scanner, Paths.get(VERSIONS_FILE));
 		} catch (IOException e) {
-			System.err.println("Couldn't read {}"+ VERSIONS_FILE+ e);
-			return false;
+			System.err.println("Couldn't read " + VERSIONS_FILE + ": " + e);
+			return null;
 		}
+		try {
+			existenceIndex.write(file.toPath());
+		} catch (IOException e) {
+			System.err.println("Couldn't write " + EXISTENCE_FILE + ": " + e);
+		}
+		return existenceIndex;
+	}
+
+	private static <T, C extends Collection<T>> C concat(C a, C b) {
+		a.addAll(b);
+		return a;
 	}
 }
@@ -1,8 +1,15 @@
 package nl.cwi.swat.aethereal;
 
+import java.io.Closeable;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -22,7 +29,13 @@ public class Main {
 				.addOption(Option.builder("remote")
 						.desc("Fetch artifact information from Maven Central / mvnrepository.com").build())
 				.addOption(Option.builder("local")
-						.desc("Fetch artifact information from a local copy of the Maven Dependency Graph").build());
+						.desc("Fetch artifact information from a local copy of the Maven Dependency Graph").build())
+				.addOption(Option.builder("kv").desc(
+						"Fetch artifact information from an embedded key-value store populated from the local Maven Dependency Graph")
+						.build())
+				.addOption(Option.builder("hybrid").desc(
+						"Fetch artifact information from the local Maven Dependency Graph, and from Maven Central / mvnrepository.com for what it lacks")
+						.build());
 		method.setRequired(true);
 
 		Options opts = new Options()
@@ -34,6 +47,15 @@ public class Main {
 				.addOption(Option.builder("path").hasArg().argName("path")
 						.desc("Relative path to where the dataset should be stored (default is 'dataset')").build())
 				.addOption(Option.builder("m3").desc("Serialize the M3 models of all JARs").build())
+				.addOption(Option.builder("transitive").hasArg().argName("depth").desc(
+						"Write the clients of libV1 within depth compile-scope dependencies to transitiveClients.csv (with -v1)")
+						.build())
+				.addOption(Option.builder("index")
+						.desc("Build the binary index of the local Maven Dependency Graph (with -local or -hybrid)")
+						.build())
+				.addOption(Option.builder("update").hasArg().argName("deltaPath").desc(
+						"Ingest the delta CSV files found in deltaPath into the local Maven Dependency Graph (with -local or -hybrid)")
+						.build())
 				.addOptionGroup(method)
 				.addOption(
 						Option.builder("v1").hasArg().argName("libV1").desc("Initial version of the library").build())
@@ -43,6 +65,7 @@ public class Main {
 		try (FileInputStream fis = new FileInputStream("aethereal.properties")) {
 			CommandLineParser parser = new DefaultParser();
 			CommandLine cmd = parser.parse(opts, args);
+			int depth = transitiveDepth(cmd);
 			Properties props = new Properties();
 			props.load(fis);
 
@@ -51,11 +74,24 @@ public class Main {
 			}
 
 			int aetherQps = Integer.parseInt(props.getProperty("aether.qps", "4"));
-			int jsoupQps = Integer.parseInt(props.getProperty("jsoup.qps", "4"));
 
-			MavenCollector collector = cmd.hasOption("remote") ? new AetherCollector(aetherQps, jsoupQps)
-					: new LocalCollector();
-			AetherDownloader downloader = new AetherDownloader(aetherQps);
+			// Collector and downloader share their budget of requests to Maven Central
+			AdaptiveRateLimiter centralLimiter = new AdaptiveRateLimiter("Maven Central", aetherQps);
+			MavenCollector collector;
+			if (cmd.hasOption("remote")) {
+				collector = newAetherCollector(props, centralLimiter);
+			} else if (cmd.hasOption("kv")) {
+				collector = KeyValueCollector.open(Paths.get(LocalCollector.DATASET_PATH),
+						props.getProperty("dataset", LocalCollector.REMOTE_DATASET), props.getProperty("dataset.md5"));
+			} else if (cmd.hasOption("hybrid")) {
+				collector = new HybridCollector(newLocalCollector(cmd, props), newAetherCollector(props, centralLimiter));
+			} else {
+				collector = newLocalCollector(cmd, props);
+			}
+			ArtifactStore store = ArtifactStore.open(Paths.get(props.getProperty("store", ArtifactStore.DEFAULT_PATH)));
+			AetherDownloader downloader = new AetherDownloader(newMirrors(props, centralLimiter), Integer.parseInt(props
+					.getProperty("download.threads", props.getProperty("aether.threads", String.valueOf(aetherQps)))),
+					store);
 			String coordinates = String.format("%s:%s", cmd.getOptionValue("groupId"),
 					cmd.getOptionValue("artifactId"));
 			String path = cmd.getOptionValue("datasetPath", "dataset");
@@ -92,11 +128,92 @@ public class Main {
 			if (cmd.hasOption("m3")) {
 				dt.writeM3s();
 			}
+
+			if (cmd.hasOption("transitive")) {
+				dt.writeTransitiveClients(String.format("%s:%s", coordinates, cmd.getOptionValue("v1")), depth);
+			}
 		} catch (ParseException e) {
 			System.err.println(e.getMessage());
 			formatter.printHelp("aethereal", opts);
 		} catch (IOException e) {
 			System.err.println(e);
+		} catch (UncheckedIOException e) {
+			System.err.println(e.getMessage() + ": " + e.getCause());
+		}
+	}
+
+	// Checked before anything gets built or downloaded
+	private static int transitiveDepth(CommandLine cmd) throws ParseException {
+		if (!cmd.hasOption("transitive"))
+			return 0;
+		if (!cmd.hasOption("v1"))
+			throw new ParseException("-transitive requires -v1");
+		try {
+			int depth = Integer.parseInt(cmd.getOptionValue("transitive"));
+			if (depth > 0)
+				return depth;
+		} catch (NumberFormatException e) {
+			// Reported below
+		}
+		throw new ParseException("-transitive expects a positive depth");
+	}
+
+	private LocalCollector newLocalCollector(CommandLine cmd, Properties props) throws IOException {
+		LocalCollector local = new LocalCollector(props.getProperty("dataset", LocalCollector.REMOTE_DATASET),
+				props.getProperty("dataset.md5"));
+		if (cmd.hasOption("index"))
+			local.buildIndex();
+		if (cmd.hasOption("update"))
+			local.update(Paths.get(cmd.getOptionValue("update")));
+		return local;
+	}
+
+	// The remote repository, then the comma-separated URLs of its mirrors, each
+	// with its own budget of requests
+	private List<Mirror> newMirrors(Properties props, AdaptiveRateLimiter centralLimiter) {
+		List<Mirror> mirrors = new ArrayList<>();
+		mirrors.add(new Mirror("Maven Central", Aether.REMOTE_URL, centralLimiter));
+		int mirrorQps = Integer.parseInt(props.getProperty("mirrors.qps", props.getProperty("aether.qps", "4")));
+		for (String url : props.getProperty("mirrors", "").split(","))
+			if (!url.trim().isEmpty())
+				mirrors.add(new Mirror(url.trim(), url.trim(), new AdaptiveRateLimiter(url.trim(), mirrorQps)));
+		return mirrors;
+	}
+
+	private AetherCollector newAetherCollector(Properties props, AdaptiveRateLimiter centralLimiter) {
+		int jsoupQps = Integer.parseInt(props.getProperty("jsoup.qps", "4"));
+		int aetherThreads = Integer.parseInt(props.getProperty("aether.threads", props.getProperty("aether.qps", "4")));
+
+		String cacheFile = props.getProperty("aether.cache", "aether-cache.mv");
+		DescriptorCache cache = openCache(cacheFile, () -> new DescriptorCache(cacheFile,
+				Long.parseLong(props.getProperty("aether.cache.ttl", "168")), TimeUnit.HOURS));
+		String pagesFile = props.getProperty("http.cache", "http-cache.mv");
+		HttpCache pages = openCache(pagesFile, () -> new HttpCache(pagesFile,
+				Long.parseLong(props.getProperty("http.cache.ttl", "24")), TimeUnit.HOURS));
+		MavenMetadataCache metadata = new MavenMetadataCache(Aether.REMOTE_URL, pages, centralLimiter,
+				Long.parseLong(props.getProperty("aether.metadata.ttl", "6")), TimeUnit.HOURS);
+		return new AetherCollector(centralLimiter, new AdaptiveRateLimiter("mvnrepository.com", jsoupQps),
+				aetherThreads, cache, pages, metadata);
+	}
+
+	// The caches are stores with a single writer: processes started next to one
+	// holding them run without, and an empty path disables them
+	private static <T extends Closeable> T openCache(String file, Supplier<T> open) {
+		if (file.trim().isEmpty())
+			return null;
+		try {
+			T cache = open.get();
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					cache.close();
+				} catch (IOException e) {
+					System.err.println("Couldn't close cache " + file + ": " + e);
+				}
+			}));
+			return cache;
+		} catch (IllegalStateException e) {
+			System.err.println("Couldn't open cache " + file + ", running without it: " + e.getMessage());
+			return null;
 		}
 	}
 
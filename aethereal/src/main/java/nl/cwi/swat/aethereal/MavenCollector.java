@@ -1,6 +1,14 @@
 package nl.cwi.swat.aethereal;
 
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.aether.artifact.Artifact;
 
@@ -26,6 +34,8 @@ public interface MavenCollector {
 
 	/**
 	 * Collect all clients of the given artifact
+	 * 
+	 * @throws UncheckedIOException if the clients couldn't all be listed
 	 */
 	public List<Artifact> collectClientsOf(Artifact artifact);
 
@@ -35,9 +45,57 @@ public interface MavenCollector {
 	 * 
 	 * @param coordinates Version-free coordinates, i.e.
 	 *                    &lt;groupId&gt;:&lt;artifactId&gt;
+	 * @throws UncheckedIOException if the clients couldn't all be listed
 	 */
 	public Multimap<Artifact, Artifact> collectClientsOf(String coordinates);
 
+	/**
+	 * Collect all clients of every given unversioned coordinate at once. The
+	 * default implementation issues one {@link #collectClientsOf(String)} per
+	 * coordinate; implementations may answer the whole batch in a single pass.
+	 * 
+	 * @param coordinates Version-free coordinates, i.e.
+	 *                    &lt;groupId&gt;:&lt;artifactId&gt;
+	 * @return the clients of each coordinate, keyed by coordinate in iteration
+	 *         order
+	 * @throws UncheckedIOException if the clients couldn't all be listed
+	 */
+	public default Map<String, Multimap<Artifact, Artifact>> collectClientsOf(Collection<String> coordinates) {
+		Map<String, Multimap<Artifact, Artifact>> ret = new LinkedHashMap<>();
+		for (String coordinate : coordinates)
+			ret.put(coordinate, collectClientsOf(coordinate));
+		return ret;
+	}
+
+	/**
+	 * Collect all clients that transitively depend on the given artifact through
+	 * dependencies of the given scopes, up to {@code depth} hops (1 yields the
+	 * direct clients). The default implementation expands each level with
+	 * {@link #collectClientsOf(Artifact)}, and thus follows the edges it reports
+	 * whatever the scopes.
+	 * 
+	 * @return every client with its distance to {@code artifact}, closest first
+	 */
+	public default Map<Artifact, Integer> collectTransitiveClientsOf(Artifact artifact, int depth,
+			Set<DependencyScope> scopes) {
+		Map<Artifact, Integer> ret = new LinkedHashMap<>();
+		Set<String> visited = new HashSet<>();
+		visited.add(Aether.toCoordinates(artifact));
+
+		List<Artifact> frontier = Collections.singletonList(artifact);
+		for (int d = 1; d <= depth && !frontier.isEmpty(); d++) {
+			List<Artifact> next = new ArrayList<>();
+			for (Artifact target : frontier)
+				for (Artifact client : collectClientsOf(target))
+					if (visited.add(Aether.toCoordinates(client))) {
+						next.add(client);
+						ret.put(client, d);
+					}
+			frontier = next;
+		}
+		return ret;
+	}
+
 	/**
 	 * Collect libraries that match the given query (number of clients, size of the
 	 * JAR, number of versions, etc.)
@@ -45,7 +103,26 @@ public interface MavenCollector {
 	public List<Artifact> collectLibrariesMatching(MavenCollectorQuery query);
 	/**
 	 * Check if the coordinate points to a real arifact
+	 * 
+	 * @throws UncheckedIOException if the remote repository couldn't tell
 	 */
 	public boolean checkArtifact(String coordinate);
+
+	/**
+	 * Check every given coordinate at once. The default implementation issues
+	 * one {@link #checkArtifact(String)} per coordinate; implementations may
+	 * verify the whole batch concurrently.
+	 * 
+	 * @return whether each coordinate points to a real artifact, keyed by
+	 *         coordinate in iteration order
+	 * @throws UncheckedIOException if the remote repository couldn't tell for
+	 *                              some coordinate
+	 */
+	public default Map<String, Boolean> checkArtifacts(Collection<String> coordinates) {
+		Map<String, Boolean> ret = new LinkedHashMap<>();
+		for (String coordinate : coordinates)
+			ret.put(coordinate, checkArtifact(coordinate));
+		return ret;
+	}
 	
 }
@@ -4,11 +4,24 @@ public class MavenCollectorQuery {
 	private final int clients;
 	private final int size;
 	private final int versions;
+	private final int limit;
 
 	public MavenCollectorQuery(int clients, int size, int versions) {
+		this(clients, size, versions, 0);
+	}
+
+	/**
+	 * @param size  Minimum size in bytes of the JAR of the latest version (0 for
+	 *              no constraint). Sizes are only known for JARs already in the
+	 *              local repository: other libraries never match a positive size.
+	 * @param limit Maximum number of results, most used libraries first (0 for
+	 *              no limit)
+	 */
+	public MavenCollectorQuery(int clients, int size, int versions, int limit) {
 		this.clients = clients;
 		this.size = size;
 		this.versions = versions;
+		this.limit = limit;
 	}
 
 	public int getClients() {
@@ -23,6 +36,10 @@ public class MavenCollectorQuery {
 		return versions;
 	}
 
+	public int getLimit() {
+		return limit;
+	}
+
 	public static Builder builder() {
 		return new Builder();
 	}
@@ -31,6 +48,7 @@ public class MavenCollectorQuery {
 		private int clients;
 		private int size;
 		private int versions;
+		private int limit;
 
 		public Builder clients(int n) {
 			this.clients = n;
@@ -47,8 +65,13 @@ public class MavenCollectorQuery {
 			return this;
 		}
 
+		public Builder limit(int n) {
+			this.limit = n;
+			return this;
+		}
+
 		public MavenCollectorQuery build() {
-			return new MavenCollectorQuery(clients, size, versions);
+			return new MavenCollectorQuery(clients, size, versions, limit);
 		}
 	}
 }
@@ -2,12 +2,16 @@ package nl.cwi.swat.aethereal;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -98,6 +102,15 @@ public class MavenDataset {
 		return collector.collectClientsOf(libv1);
 	}
 
+	/**
+	 * Clients depending on {@code libV1} through at most {@code depth}
+	 * compile-scope dependencies, with their distance to it
+	 */
+	public Map<Artifact, Integer> getTransitiveClients(String libV1, int depth) {
+		DefaultArtifact libv1 = new DefaultArtifact(libV1);
+		return collector.collectTransitiveClientsOf(libv1, depth, EnumSet.of(DependencyScope.COMPILE));
+	}
+
 	public void build() throws IOException {
 		System.out.println("Building dataset for {}"+ coordinates);
 
@@ -123,10 +136,15 @@ public class MavenDataset {
 		System.out.println("Creating output folder {}"+ datasetPath);
 		Files.createDirectories(Paths.get(datasetPath));
 
-		if (collector.checkArtifact(String.format("%s:%s", coordinates, v1)))
-			libraries.add(new DefaultArtifact(String.format("%s:%s", coordinates, v1)));
-		if (collector.checkArtifact(String.format("%s:%s", coordinates, v2)))
-			libraries.add(new DefaultArtifact(String.format("%s:%s", coordinates, v2)));
+		// Both versions are verified at once
+		List<String> versions = Arrays.asList(String.format("%s:%s", coordinates, v1),
+				String.format("%s:%s", coordinates, v2));
+		Map<String, Boolean> exist = checkArtifacts(versions);
+		for (String version : versions)
+			if (exist.get(version))
+				libraries.add(new DefaultArtifact(version));
+			else
+				throw new IOException("Artifact " + version + " doesn't exist");
 		System.out.println("Found {} versions"+ libraries.size());
 
 		collector.collectClientsOf(libraries.get(0)).forEach(z -> links.put(libraries.get(0), z));
@@ -146,8 +164,10 @@ public class MavenDataset {
 		System.out.println("Creating output folder {}"+datasetPath);
 		Files.createDirectories(Paths.get(datasetPath));
 
-		if (collector.checkArtifact(String.format("%s:%s", coordinates, v1)))
-			libraries.add(new DefaultArtifact(String.format("%s:%s", coordinates, v1)));
+		String version = String.format("%s:%s", coordinates, v1);
+		if (!checkArtifacts(Collections.singletonList(version)).get(version))
+			throw new IOException("Artifact " + version + " doesn't exist");
+		libraries.add(new DefaultArtifact(version));
 
 		System.out.println("Found {} versions"+ libraries.size());
 		collector.collectClientsOf(libraries.get(0)).forEach(z -> links.put(libraries.get(0), z));
@@ -254,6 +274,30 @@ public class MavenDataset {
 		}
 	}
 
+	/**
+	 * Write the clients depending on {@code libV1} through at most {@code depth}
+	 * compile-scope dependencies to transitiveClients.csv, closest first
+	 */
+	public void writeTransitiveClients(String libV1, int depth) {
+		Map<Artifact, Integer> clients = getTransitiveClients(libV1, depth);
+		System.out.println("Found " + clients.size() + " clients of " + libV1 + " within " + depth + " hops");
+
+		Path path = Paths.get(datasetPath + "/transitiveClients.csv");
+		try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+			writer.write("client,distance");
+			writer.newLine();
+			for (Map.Entry<Artifact, Integer> client : clients.entrySet().stream()
+					.sorted(Map.Entry.<Artifact, Integer>comparingByValue()
+							.thenComparing(e -> e.getKey().toString()))
+					.collect(Collectors.toList())) {
+				writer.write(client.getKey() + "," + client.getValue());
+				writer.newLine();
+			}
+		} catch (IOException e) {
+			System.err.println("Couldn't write transitive clients" + e);
+		}
+	}
+
 	public void download() {
 		// Download libraries
 		downloader.downloadArtifactTo(candidates.get(0).libv1, datasetPath + "/libraries");
@@ -302,6 +346,15 @@ public class MavenDataset {
 		}
 	}
 
+	// Existence of the given coordinates; failing to tell is an error
+	private Map<String, Boolean> checkArtifacts(List<String> versions) throws IOException {
+		try {
+			return collector.checkArtifacts(versions);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
 	private Table<Artifact, String, String> computeVersionMatrix() {
 		Table<Artifact, String, String> result = HashBasedTable.create();
 
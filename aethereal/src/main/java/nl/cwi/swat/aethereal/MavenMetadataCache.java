@@ -0,0 +1,99 @@
+package nl.cwi.swat.aethereal;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Reader;
+import org.apache.maven.artifact.versioning.ComparableVersion;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * Versions of the artifacts of a remote repository, read from their
+ * maven-metadata.xml. Listings are kept in memory for the TTL, so concurrent
+ * and repeated lookups of the same &lt;groupId&gt;:&lt;artifactId&gt; share a
+ * single request, and persisted in an {@link HttpCache}, so that later runs
+ * only revalidate them.
+ */
+public class MavenMetadataCache {
+	private final String repository;
+	private final HttpCache http;
+	private final AdaptiveRateLimiter limiter;
+	private final long ttl;
+	private final LoadingCache<String, List<String>> versions;
+
+	/**
+	 * @param repository Base URL of the remote repository
+	 * @param http       Persistent cache of the listings, or null
+	 * @param ttl        How long a listing is used without revalidation
+	 */
+	public MavenMetadataCache(String repository, HttpCache http, AdaptiveRateLimiter limiter, long ttl,
+			TimeUnit unit) {
+		this.repository = repository.endsWith("/") ? repository : repository + "/";
+		this.http = http;
+		this.limiter = limiter;
+		this.ttl = unit.toMillis(ttl);
+		this.versions = CacheBuilder.newBuilder().expireAfterWrite(ttl, unit)
+				.build(new CacheLoader<String, List<String>>() {
+					@Override
+					public List<String> load(String coordinates) throws IOException {
+						return fetch(coordinates);
+					}
+				});
+	}
+
+	/**
+	 * All versions of the given unversioned coordinates, oldest first, or an
+	 * empty list if the repository doesn't know about them
+	 */
+	public List<String> versionsOf(String coordinates) throws IOException {
+		try {
+			return versions.get(coordinates);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Versions of the given unversioned coordinates within [lowerBound,
+	 * upperBound), oldest first. Empty bounds are unbounded.
+	 */
+	public List<String> versionsOf(String coordinates, String lowerBound, String upperBound) throws IOException {
+		List<String> all = versionsOf(coordinates);
+		int[] range = VersionIndex.range(0, all.size(), i -> new ComparableVersion(all.get(i)), lowerBound,
+				upperBound);
+		return all.subList(range[0], range[1]);
+	}
+
+	private List<String> fetch(String coordinates) throws IOException {
+		String[] parts = coordinates.split(":");
+		if (parts.length != 2)
+			throw new IllegalArgumentException("Not <groupId>:<artifactId> coordinates: " + coordinates);
+
+		String url = repository + parts[0].replace('.', '/') + "/" + parts[1] + "/maven-metadata.xml";
+		byte[] body = http != null ? http.fetch(url, ttl, limiter) : HttpCache.download(url, limiter);
+		if (body == null)
+			return Collections.emptyList();
+
+		try {
+			Metadata metadata = new MetadataXpp3Reader().read(new ByteArrayInputStream(body), false);
+			if (metadata.getVersioning() == null)
+				return Collections.emptyList();
+			return Collections
+					.unmodifiableList(VersionIndex.sort(new LinkedHashSet<>(metadata.getVersioning().getVersions())));
+		} catch (XmlPullParserException e) {
+			throw new IOException("Malformed metadata " + url, e);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package nl.cwi.swat.aethereal;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * A remote repository {@link AetherDownloader} can download artifacts from,
+ * e.g. Maven Central, a corporate proxy or a local file:// copy, with its own
+ * rate limiter. The downloads it served are measured, to rank mirrors and
+ * decide when a slow download deserves a second request to another mirror. As
+ * artifacts range from a few KB to many MB, a download is judged on the delay
+ * before its first byte and on its throughput, rather than on its total
+ * latency.
+ */
+public class Mirror {
+	// Measures kept to compute the hedging delays
+	private static final int WINDOW = 128;
+	// Measures required before trusting their percentiles
+	private static final int MIN_SAMPLES = 8;
+	private static final long DEFAULT_FIRST_BYTE_DELAY = TimeUnit.SECONDS.toMillis(2);
+	// Bytes per millisecond, i.e. 100KB/s
+	private static final double DEFAULT_SLOW_THROUGHPUT = 100;
+	private static final long MIN_HEDGE_DELAY = 50;
+	// Weight of the latest download in the throughput estimate
+	private static final double ALPHA = 0.2;
+
+	private final String name;
+	private final RemoteRepository repository;
+	private final AdaptiveRateLimiter limiter;
+	private final long[] firstBytes = new long[WINDOW];
+	private int firstByteSamples;
+	private final double[] throughputs = new double[WINDOW];
+	private int throughputSamples;
+	// Bytes per millisecond, NaN until the first download
+	private double throughput = Double.NaN;
+
+	/**
+	 * @param name Name of the mirror, for logging purposes
+	 * @param url  Base URL of the repository. Mirrors share the same repository
+	 *             identifier, so that Aether considers files downloaded from
+	 *             one of them as available from all the others.
+	 */
+	public Mirror(String name, String url, AdaptiveRateLimiter limiter) {
+		this.name = name;
+		this.repository = AetherDownloader.toRemoteRepository(url, Optional.empty(), Optional.empty());
+		this.limiter = limiter;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public RemoteRepository getRepository() {
+		return repository;
+	}
+
+	public AdaptiveRateLimiter getLimiter() {
+		return limiter;
+	}
+
+	/**
+	 * Record a download of {@code bytes} bytes, whose first byte came after
+	 * {@code firstByteMillis} milliseconds, then transferred in
+	 * {@code transferMillis} milliseconds, or -1 if unknown
+	 */
+	public synchronized void onDownload(long bytes, long firstByteMillis, long transferMillis) {
+		firstBytes[firstByteSamples++ % WINDOW] = firstByteMillis;
+		if (transferMillis >= 0)
+			throughputs[throughputSamples++ % WINDOW] = (double) bytes / Math.max(1, transferMillis);
+
+		double observed = (double) bytes / Math.max(1, firstByteMillis + Math.max(0, transferMillis));
+		throughput = Double.isNaN(throughput) ? observed : ALPHA * observed + (1 - ALPHA) * throughput;
+	}
+
+	/**
+	 * Record a download the mirror couldn't serve, other than a missing artifact
+	 */
+	public synchronized void onFailure() {
+		throughput = Double.isNaN(throughput) ? 0 : throughput / 2;
+	}
+
+	/**
+	 * Estimated throughput in bytes per millisecond, or NaN if the mirror didn't
+	 * serve anything yet
+	 */
+	public synchronized double getThroughput() {
+		return throughput;
+	}
+
+	/**
+	 * How long to wait for the first byte of a download from this mirror before
+	 * asking another one: the given percentile of its recent delays
+	 *
+	 * @param percentile Between 0 and 1
+	 */
+	public synchronized long firstByteDelay(double percentile) {
+		int n = Math.min(firstByteSamples, WINDOW);
+		if (n < MIN_SAMPLES)
+			return DEFAULT_FIRST_BYTE_DELAY;
+		long[] sorted = Arrays.copyOf(firstBytes, n);
+		Arrays.sort(sorted);
+		return Math.max(MIN_HEDGE_DELAY, sorted[rank(percentile, n)]);
+	}
+
+	/**
+	 * How long to wait for the transfer of {@code bytes} bytes from this mirror
+	 * before asking another one: as long as it takes at a throughput slower than
+	 * the given percentile of its recent transfers
+	 *
+	 * @param percentile Between 0 and 1
+	 */
+	public synchronized long transferDelay(long bytes, double percentile) {
+		int n = Math.min(throughputSamples, WINDOW);
+		double slow = DEFAULT_SLOW_THROUGHPUT;
+		if (n >= MIN_SAMPLES) {
+			double[] sorted = Arrays.copyOf(throughputs, n);
+			Arrays.sort(sorted);
+			slow = sorted[rank(1 - percentile, n)];
+		}
+		return Math.max(MIN_HEDGE_DELAY, (long) Math.ceil(bytes / Math.max(slow, Double.MIN_NORMAL)));
+	}
+
+	// Index of the given percentile among n sorted values. Rounding errors, as in
+	// 1 - 0.95, mustn't push it to the next value.
+	private static int rank(double percentile, int n) {
+		return Math.max(0, Math.min(n - 1, (int) Math.ceil(percentile * n - 1e-9) - 1));
+	}
+
+	@Override
+	public String toString() {
+		return name + " (" + repository.getUrl() + ")";
+	}
+}
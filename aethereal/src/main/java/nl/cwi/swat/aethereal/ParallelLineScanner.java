@@ -0,0 +1,185 @@
+package nl.cwi.swat.aethereal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * Scans a (large) line-oriented file in parallel. The file is split into byte
+ * ranges aligned on newlines, each range is memory-mapped and its lines are fed
+ * to a {@link LineVisitor} on a fork-join pool. Every range accumulates its own
+ * results, which are combined in file order.
+ */
+public class ParallelLineScanner {
+	private static final long MIN_CHUNK_SIZE = 1L << 20;
+	private static final long MAX_CHUNK_SIZE = 1L << 29;
+
+	private final ForkJoinPool pool;
+
+	public ParallelLineScanner() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	public ParallelLineScanner(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	@FunctionalInterface
+	public interface LineVisitor<A> {
+		/**
+		 * Visit the line stored in {@code buffer} between {@code start} (inclusive)
+		 * and {@code end} (exclusive), line terminator excluded
+		 *
+		 * @return false to stop the whole scan
+		 */
+		boolean visit(ByteBuffer buffer, int start, int end, A accumulator);
+	}
+
+	/**
+	 * Scan all lines of {@code file}
+	 *
+	 * @param accumulator creates the accumulator of a range
+	 * @param visitor     called once per line of a range with its accumulator
+	 * @param combiner    merges the accumulator of a range into the accumulator
+	 *                    of the preceding ranges
+	 */
+	public <A> A scan(Path file, Supplier<A> accumulator, LineVisitor<A> visitor, BinaryOperator<A> combiner)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			List<Long> bounds = split(channel);
+			AtomicBoolean stopped = new AtomicBoolean(false);
+			try {
+				return pool.invoke(new ScanTask<>(channel, bounds, 0, bounds.size() - 1, accumulator, visitor,
+						combiner, stopped));
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	/**
+	 * Decode the line between {@code start} and {@code end}
+	 */
+	public static String line(ByteBuffer buffer, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = buffer.get(start + i);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// Offsets of the ranges, each one starting right after a newline
+	private List<Long> split(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long chunk = Math.max(MIN_CHUNK_SIZE,
+				Math.min(MAX_CHUNK_SIZE, size / (4L * pool.getParallelism()) + 1));
+
+		List<Long> bounds = new ArrayList<>();
+		bounds.add(0L);
+		long position = chunk;
+		ByteBuffer probe = ByteBuffer.allocate(4096);
+		while (position < size) {
+			long newline = -1;
+			while (newline < 0 && position < size) {
+				probe.clear();
+				int read = channel.read(probe, position);
+				if (read <= 0)
+					break;
+				for (int i = 0; i < read; i++) {
+					if (probe.get(i) == '\n') {
+						newline = position + i;
+						break;
+					}
+				}
+				if (newline < 0)
+					position += read;
+			}
+			if (newline < 0)
+				break;
+			bounds.add(newline + 1);
+			position = newline + 1 + chunk;
+		}
+		if (bounds.get(bounds.size() - 1) < size)
+			bounds.add(size);
+		return bounds;
+	}
+
+	private static class ScanTask<A> extends RecursiveTask<A> {
+		private static final long serialVersionUID = 1L;
+
+		private final transient FileChannel channel;
+		private final transient List<Long> bounds;
+		private final int from;
+		private final int to;
+		private final transient Supplier<A> accumulator;
+		private final transient LineVisitor<A> visitor;
+		private final transient BinaryOperator<A> combiner;
+		private final transient AtomicBoolean stopped;
+
+		ScanTask(FileChannel channel, List<Long> bounds, int from, int to, Supplier<A> accumulator,
+				LineVisitor<A> visitor, BinaryOperator<A> combiner, AtomicBoolean stopped) {
+			this.channel = channel;
+			this.bounds = bounds;
+			this.from = from;
+			this.to = to;
+			this.accumulator = accumulator;
+			this.visitor = visitor;
+			this.combiner = combiner;
+			this.stopped = stopped;
+		}
+
+		@Override
+		protected A compute() {
+			if (to - from <= 1)
+				return scanRange();
+
+			int mid = (from + to) >>> 1;
+			ScanTask<A> left = new ScanTask<>(channel, bounds, from, mid, accumulator, visitor, combiner, stopped);
+			ScanTask<A> right = new ScanTask<>(channel, bounds, mid, to, accumulator, visitor, combiner, stopped);
+			right.fork();
+			A result = left.compute();
+			return combiner.apply(result, right.join());
+		}
+
+		private A scanRange() {
+			A acc = accumulator.get();
+			if (to == from)
+				return acc;
+
+			long start = bounds.get(from);
+			long end = bounds.get(to);
+			MappedByteBuffer buffer;
+			try {
+				buffer = channel.map(MapMode.READ_ONLY, start, end - start);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+
+			int limit = buffer.limit();
+			int lineStart = 0;
+			for (int i = 0; i <= limit; i++) {
+				if (i == limit || buffer.get(i) == '\n') {
+					if (stopped.get())
+						break;
+					int lineEnd = i > lineStart && buffer.get(i - 1) == '\r' ? i - 1 : i;
+					if (lineEnd > lineStart && !visitor.visit(buffer, lineStart, lineEnd, acc))
+						stopped.set(true);
+					lineStart = i + 1;
+				}
+			}
+			return acc;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package nl.cwi.swat.aethereal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.compress.utils.IOUtils;
+import org.tukaani.xz.SeekableFileInputStream;
+import org.tukaani.xz.SeekableXZInputStream;
+
+/**
+ * Decompresses a local multi-block .xz file (e.g. produced by xz -T) by
+ * decoding its blocks in parallel. Decoded blocks are handed out in order, and
+ * at most two blocks per thread are held in memory at any time.
+ */
+public class ParallelXZInputStream extends InputStream {
+	private final Path file;
+	private final int blocks;
+	private final int window;
+	private final ExecutorService executor;
+	private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+	private int nextBlock = 0;
+	private byte[] current = new byte[0];
+	private int position = 0;
+
+	public ParallelXZInputStream(Path file, int threads) throws IOException {
+		this.file = file;
+		this.blocks = blockCount(file);
+		this.window = 2 * threads;
+		this.executor = Executors.newFixedThreadPool(threads);
+		while (pending.size() < window && nextBlock < blocks)
+			schedule();
+	}
+
+	/**
+	 * Number of independently decodable blocks in the given .xz file
+	 */
+	public static int blockCount(Path file) throws IOException {
+		try (SeekableXZInputStream in = new SeekableXZInputStream(new SeekableFileInputStream(file.toFile()))) {
+			return in.getBlockCount();
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!fill())
+			return -1;
+		return current[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		if (!fill())
+			return -1;
+		int n = Math.min(len, current.length - position);
+		System.arraycopy(current, position, b, off, n);
+		position += n;
+		return n;
+	}
+
+	@Override
+	public void close() throws IOException {
+		executor.shutdownNow();
+	}
+
+	private boolean fill() throws IOException {
+		while (position == current.length) {
+			Future<byte[]> next = pending.poll();
+			if (next == null)
+				return false;
+			try {
+				current = next.get();
+				position = 0;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while decoding " + file);
+			} catch (ExecutionException e) {
+				throw new IOException("Couldn't decode block of " + file, e.getCause());
+			}
+			if (nextBlock < blocks)
+				schedule();
+		}
+		return true;
+	}
+
+	private void schedule() {
+		int block = nextBlock++;
+		pending.add(executor.submit(() -> decode(block)));
+	}
+
+	private byte[] decode(int block) throws IOException {
+		try (SeekableXZInputStream in = new SeekableXZInputStream(new SeekableFileInputStream(file.toFile()))) {
+			long size = in.getBlockSize(block);
+			if (size > Integer.MAX_VALUE - 8)
+				throw new IOException("Block " + block + " of " + file + " is too large");
+			in.seekToBlock(block);
+			byte[] buffer = new byte[(int) size];
+			IOUtils.readFully(in, buffer);
+			return buffer;
+		}
+	}
+}
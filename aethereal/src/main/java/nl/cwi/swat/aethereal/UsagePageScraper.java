@@ -0,0 +1,122 @@
+package nl.cwi.swat.aethereal;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.select.Elements;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Scraper of the usage pages of mvnrepository.com, listing the clients of a
+ * library. Pages are walked one after the other, but page N+1 is fetched while
+ * page N is parsed. Failed fetches are retried a bounded number of times, after
+ * which scraping fails rather than passing the clients found so far for the
+ * complete listing. With an {@link HttpCache}, pages are only downloaded again
+ * once they changed.
+ */
+public class UsagePageScraper {
+	private static final String MVN_REPOSITORY_USAGE_PAGE = "https://mvnrepository.com/artifact/%s/%s/%s/usages?p=%d";
+	private static final int DEFAULT_ATTEMPTS = 5;
+
+	private final AdaptiveRateLimiter limiter;
+	private final HttpCache cache;
+	private final int maxAttempts;
+	private final ExecutorService prefetcher = Executors
+			.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("usage-page-%d").setDaemon(true).build());
+
+	/**
+	 * @param cache Cache of the pages fetched in previous runs, or null
+	 */
+	public UsagePageScraper(AdaptiveRateLimiter limiter, HttpCache cache) {
+		this(limiter, cache, DEFAULT_ATTEMPTS);
+	}
+
+	/**
+	 * @param maxAttempts Number of times a page is requested before giving up
+	 */
+	public UsagePageScraper(AdaptiveRateLimiter limiter, HttpCache cache, int maxAttempts) {
+		this.limiter = limiter;
+		this.cache = cache;
+		this.maxAttempts = Math.max(1, maxAttempts);
+	}
+
+	/**
+	 * &lt;groupId&gt;:&lt;artifactId&gt; of the clients of the given library
+	 * version, in page order
+	 *
+	 * @throws IOException if a page couldn't be fetched
+	 */
+	public List<String> scrape(String groupId, String artifactId, String version) throws IOException {
+		List<String> res = new ArrayList<>();
+		Future<Document> next = prefetch(groupId, artifactId, version, 1);
+		try {
+			for (int page = 1;; page++) {
+				Document doc = next.get();
+				if (doc == null)
+					break;
+
+				// Speculatively fetch the next page while parsing this one
+				next = prefetch(groupId, artifactId, version, page + 1);
+
+				// One div.im block per user of the library; p.im-subtitle contains coordinates
+				Elements ims = doc.select("p.im-subtitle");
+				if (ims.isEmpty()) {
+					next.cancel(true);
+					break;
+				}
+
+				ims.forEach(im -> {
+					// Two <a/> per .im-subtitle: first is groupId, second is artifactId
+					Elements as = im.select("a");
+
+					if (as.size() == 2) {
+						String parsedGroupId = as.get(0).text();
+						String parsedArtifactId = as.get(1).text();
+
+						res.add(String.format("%s:%s", parsedGroupId, parsedArtifactId));
+					}
+				});
+			}
+		} catch (InterruptedException e) {
+			next.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while scraping usage pages of " + groupId + ":"
+					+ artifactId + ":" + version);
+		} catch (ExecutionException e) {
+			throw new IOException("Couldn't scrap usage pages of " + groupId + ":" + artifactId + ":" + version,
+					e.getCause());
+		}
+		return res;
+	}
+
+	private Future<Document> prefetch(String groupId, String artifactId, String version, int page) {
+		String url = String.format(MVN_REPOSITORY_USAGE_PAGE, groupId, artifactId, version, page);
+		return prefetcher.submit(() -> fetch(url));
+	}
+
+	// The page at url, or null if it doesn't exist
+	private Document fetch(String url) throws IOException, InterruptedException {
+		for (int attempt = 0; attempt < maxAttempts; attempt++) {
+			try {
+				byte[] body = cache != null ? cache.fetch(url, limiter) : HttpCache.download(url, limiter);
+				return body != null ? Jsoup.parse(new ByteArrayInputStream(body), null, url) : null;
+			} catch (IOException e) {
+				System.err.println("We got kicked from mvnrepository.com: " + e);
+				if (attempt + 1 < maxAttempts)
+					limiter.backoff(attempt);
+			}
+		}
+
+		throw new IOException("Giving up on " + url + " after " + maxAttempts + " attempts");
+	}
+}
@@ -0,0 +1,130 @@
+package nl.cwi.swat.aethereal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+import org.apache.maven.artifact.versioning.ComparableVersion;
+
+import com.google.common.base.Strings;
+
+/**
+ * In-memory index of the versions of every artifact of the Maven Dependency
+ * Graph, built from a single scan of next_all.csv. The versions of an artifact
+ * are kept sorted with Maven's {@link ComparableVersion} semantics so that full
+ * listings and [lower, upper) range queries are binary searches.
+ */
+public class VersionIndex {
+	private final Map<String, List<String>> versions;
+
+	private VersionIndex(Map<String, List<String>> versions) {
+		this.versions = versions;
+	}
+
+	public static VersionIndex build(ParallelLineScanner scanner, Path versionsFile) throws IOException {
+		Map<String, Set<String>> found = scanner.scan(versionsFile, HashMap::new, (buffer, start, end, acc) -> {
+			// Each line in the form "source","target"
+			for (int i = 0; i < 2; i++) {
+				long field = CsvTokenizer.field(buffer, start, end, i);
+				if (field >= 0 && CsvTokenizer.indexOf(buffer, field, (byte) ':', 2) >= 0) {
+					String coordinates = CsvTokenizer.string(buffer, field);
+					acc.computeIfAbsent(unversioned(coordinates), k -> new HashSet<>()).add(version(coordinates));
+				}
+			}
+			return true;
+		}, (a, b) -> {
+			b.forEach((k, v) -> a.merge(k, v, (x, y) -> {
+				x.addAll(y);
+				return x;
+			}));
+			return a;
+		});
+
+		Map<String, List<String>> versions = new HashMap<>();
+		found.forEach((coordinates, set) -> versions.put(coordinates, sort(set)));
+		return new VersionIndex(versions);
+	}
+
+	/**
+	 * All versions of the given unversioned coordinates, oldest first
+	 */
+	public List<String> versionsOf(String coordinates) {
+		return versions.getOrDefault(coordinates, Collections.emptyList());
+	}
+
+	/**
+	 * Versions of the given unversioned coordinates within [lowerBound,
+	 * upperBound), oldest first. Empty bounds are unbounded.
+	 */
+	public List<String> versionsOf(String coordinates, String lowerBound, String upperBound) {
+		List<String> all = versionsOf(coordinates);
+		int[] range = range(0, all.size(), i -> new ComparableVersion(all.get(i)), lowerBound, upperBound);
+		return all.subList(range[0], range[1]);
+	}
+
+	/**
+	 * Sub-range [from, to) of the sorted elements whose version lies within
+	 * [lowerBound, upperBound). Empty bounds are unbounded.
+	 */
+	static int[] range(int from, int to, IntFunction<ComparableVersion> versionAt, String lowerBound,
+			String upperBound) {
+		int lo = Strings.isNullOrEmpty(lowerBound) ? from
+				: lowerBound(from, to, versionAt, new ComparableVersion(lowerBound));
+		int hi = Strings.isNullOrEmpty(upperBound) ? to
+				: lowerBound(lo, to, versionAt, new ComparableVersion(upperBound));
+		return new int[] { lo, hi };
+	}
+
+	// First element in [from, to) whose version is >= key
+	private static int lowerBound(int from, int to, IntFunction<ComparableVersion> versionAt, ComparableVersion key) {
+		int lo = from;
+		int hi = to;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (versionAt.apply(mid).compareTo(key) < 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * The given versions, oldest first
+	 */
+	static List<String> sort(Set<String> versions) {
+		List<ComparableVersion> parsed = new ArrayList<>();
+		for (String version : versions)
+			parsed.add(new ComparableVersion(version));
+		parsed.sort(Comparator.naturalOrder());
+
+		List<String> sorted = new ArrayList<>(parsed.size());
+		for (ComparableVersion version : parsed)
+			sorted.add(version.toString());
+		return sorted;
+	}
+
+	/**
+	 * &lt;groupId&gt;:&lt;artifactId&gt; part of the given coordinates
+	 */
+	static String unversioned(String coordinates) {
+		int groupEnd = coordinates.indexOf(':');
+		int artifactEnd = coordinates.indexOf(':', groupEnd + 1);
+		return artifactEnd < 0 ? coordinates : coordinates.substring(0, artifactEnd);
+	}
+
+	/**
+	 * Version part (last segment) of the given coordinates
+	 */
+	static String version(String coordinates) {
+		return coordinates.substring(coordinates.lastIndexOf(':') + 1);
+	}
+}
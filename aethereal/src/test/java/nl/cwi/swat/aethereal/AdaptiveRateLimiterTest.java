@@ -0,0 +1,86 @@
+package nl.cwi.swat.aethereal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class AdaptiveRateLimiterTest {
+	private static final double DELTA = 1e-9;
+
+	@Test
+	public void startsAtCeiling() {
+		assertEquals(8, new AdaptiveRateLimiter("test", 8).getRate(), DELTA);
+		assertEquals(0.1, new AdaptiveRateLimiter("test", 0).getRate(), DELTA);
+	}
+
+	@Test
+	public void staysAtCeiling() {
+		AdaptiveRateLimiter limiter = new AdaptiveRateLimiter("test", 8, 1);
+		limiter.onSuccess();
+		assertEquals(8, limiter.getRate(), DELTA);
+	}
+
+	// Backoff delays, waited for by nobody
+	private final List<Long> delays = Collections.synchronizedList(new ArrayList<>());
+
+	@Test
+	public void halvesOnThrottling() throws InterruptedException {
+		AdaptiveRateLimiter limiter = new AdaptiveRateLimiter("test", 8, 2, delays::add);
+		limiter.backoff(0);
+		assertEquals(4, limiter.getRate(), DELTA);
+
+		// 4 successes at 4 requests/s take a second, and gain about 2 requests/s
+		for (int i = 0; i < 4; i++)
+			limiter.onSuccess();
+		assertTrue("Now at " + limiter.getRate(), limiter.getRate() > 5.5 && limiter.getRate() <= 6);
+		for (int i = 0; i < 100; i++)
+			limiter.onSuccess();
+		assertEquals(8, limiter.getRate(), DELTA);
+	}
+
+	@Test
+	public void backsOffExponentially() throws InterruptedException {
+		AdaptiveRateLimiter limiter = new AdaptiveRateLimiter("test", 8, 1, delays::add);
+		for (int attempt = 0; attempt < 10; attempt++)
+			limiter.backoff(attempt);
+		long[] ceilings = { 1000, 2000, 4000, 8000, 16_000, 32_000, 60_000, 60_000, 60_000, 60_000 };
+		for (int attempt = 0; attempt < ceilings.length; attempt++) {
+			long delay = delays.get(attempt);
+			assertTrue("Backed off " + delay + "ms", delay >= ceilings[attempt] / 2 && delay <= ceilings[attempt]);
+		}
+	}
+
+	@Test
+	public void countsConcurrentThrottlingOnce() throws InterruptedException {
+		AdaptiveRateLimiter limiter = new AdaptiveRateLimiter("test", 8, 0.8, delays::add);
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> {
+				try {
+					limiter.backoff(0);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		assertEquals(4, delays.size());
+		assertEquals(4, limiter.getRate(), DELTA);
+	}
+
+	@Test
+	public void neverStops() throws InterruptedException {
+		AdaptiveRateLimiter limiter = new AdaptiveRateLimiter("test", 0.15, 0.1, delays::add);
+		limiter.backoff(0);
+		assertEquals(0.1, limiter.getRate(), DELTA);
+		limiter.onSuccess();
+		assertTrue(limiter.getRate() > 0.1);
+	}
+}
@@ -0,0 +1,215 @@
+package nl.cwi.swat.aethereal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.BaseEncoding;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Downloads from several mirrors served by local HTTP servers
+ */
+public class AetherDownloaderTest {
+	private static final Artifact ARTIFACT = new DefaultArtifact("org.example:fake:1.0");
+	private static final String PATH = "/org/example/fake/1.0/fake-1.0.jar";
+	private static final byte[] JAR = new byte[20_000];
+	private static final byte[] OTHER_JAR = new byte[20_000];
+	static {
+		new Random(42).nextBytes(JAR);
+		new Random(43).nextBytes(OTHER_JAR);
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final List<Server> servers = new ArrayList<>();
+
+	@After
+	public void stopServers() {
+		for (Server server : servers)
+			server.stop();
+	}
+
+	@Test
+	public void doesntHedgeFastMirror() throws IOException {
+		Server fast = serve(JAR, sha1(JAR), 0, 0);
+		Server other = serve(JAR, sha1(JAR), 0, 0);
+		assertDownloaded(download(fast, other));
+		assertEquals(0, other.requests.get());
+	}
+
+	// The slow mirror serves another, valid JAR, which only wins if the download
+	// isn't hedged
+	@Test
+	public void hedgesSlowFirstByte() throws IOException {
+		// Much later than the default first byte delay of 2s
+		Server slow = serve(OTHER_JAR, sha1(OTHER_JAR), 30_000, 0);
+		Server fast = serve(JAR, sha1(JAR), 0, 0);
+		assertDownloaded(download(slow, fast));
+		assertEquals(1, slow.requests.get());
+		assertEquals(1, fast.requests.get());
+	}
+
+	@Test
+	public void hedgesSlowTransfer() throws IOException {
+		// 1KB/s, i.e. 20s for the whole artifact, far below the default 100KB/s
+		Server slow = serve(OTHER_JAR, sha1(OTHER_JAR), 0, 100);
+		Server fast = serve(JAR, sha1(JAR), 0, 0);
+		assertDownloaded(download(slow, fast));
+		assertEquals(1, slow.requests.get());
+		assertEquals(1, fast.requests.get());
+	}
+
+	@Test
+	public void fallsBackOnMissingArtifact() throws IOException {
+		Server missing = serve(null, null, 0, 0);
+		Server fast = serve(JAR, sha1(JAR), 0, 0);
+		assertDownloaded(download(missing, fast));
+		assertEquals(1, fast.requests.get());
+	}
+
+	@Test
+	public void fallsBackOnCorruptedArtifact() throws IOException {
+		byte[] corrupted = Arrays.copyOf(JAR, JAR.length);
+		corrupted[0]++;
+		Server corrupt = serve(corrupted, sha1(JAR), 0, 0);
+		Server fast = serve(JAR, sha1(JAR), 0, 0);
+		assertDownloaded(download(corrupt, fast));
+	}
+
+	@Test
+	public void reusesVerifiedDownloads() throws IOException {
+		File repository = folder.newFolder();
+		File jar = new File(repository, PATH);
+		FileUtils.writeByteArrayToFile(jar, JAR);
+		FileUtils.writeStringToFile(new File(repository, PATH + ".sha1"), sha1(JAR), StandardCharsets.UTF_8);
+		byte[] other = Arrays.copyOf(JAR, JAR.length);
+		other[0]++;
+		Server first = serve(other, sha1(other), 0, 0);
+		Server second = serve(other, sha1(other), 0, 0);
+
+		assertDownloaded(download(repository.getAbsolutePath(), first, second));
+		assertEquals(0, first.requests.get() + second.requests.get());
+
+		// Unless modified since
+		FileUtils.writeByteArrayToFile(jar, other);
+		DownloadResult result = download(repository.getAbsolutePath(), first, second);
+		assertTrue(result.getError(), result.isSuccess());
+		assertEquals(1, first.requests.get());
+	}
+
+	@Test
+	public void failsWithoutArtifact() throws IOException {
+		DownloadResult result = download(serve(null, null, 0, 0), serve(null, null, 0, 0));
+		assertFalse(result.isSuccess());
+		assertEquals(null, result.getResolved());
+	}
+
+	private DownloadResult download(Server... servers) throws IOException {
+		return download(folder.newFolder().getAbsolutePath(), servers);
+	}
+
+	private DownloadResult download(String repository, Server... servers) {
+		List<Mirror> mirrors = new ArrayList<>();
+		for (int i = 0; i < servers.length; i++) {
+			String name = "mirror-" + i;
+			mirrors.add(new Mirror(name, servers[i].url(), new AdaptiveRateLimiter(name, 100)));
+		}
+		AetherDownloader downloader = new AetherDownloader(mirrors, 1, null);
+		return downloader.downloadAll(Collections.singletonList(ARTIFACT), repository).get(0);
+	}
+
+	private static void assertDownloaded(DownloadResult result) throws IOException {
+		assertTrue(result.getError(), result.isSuccess());
+		assertArrayEquals(JAR, Files.readAllBytes(result.getResolved().getFile().toPath()));
+	}
+
+	private static String sha1(byte[] bytes) {
+		try {
+			return BaseEncoding.base16().lowerCase().encode(MessageDigest.getInstance("SHA-1").digest(bytes));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Serve {@code jar}, if not null, and its checksum at {@link #PATH}, after
+	 * {@code delay} milliseconds and at {@code rate} bytes per 100ms if positive
+	 */
+	private Server serve(byte[] jar, String sha1, long delay, int rate) throws IOException {
+		Server server = new Server(jar, sha1, delay, rate);
+		servers.add(server);
+		return server;
+	}
+
+	private static class Server {
+		final HttpServer http;
+		final ExecutorService executor = Executors.newCachedThreadPool();
+		final AtomicInteger requests = new AtomicInteger();
+
+		Server(byte[] jar, String sha1, long delay, int rate) throws IOException {
+			http = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+			http.setExecutor(executor);
+			http.createContext("/", exchange -> {
+				String path = exchange.getRequestURI().getPath();
+				try (OutputStream out = exchange.getResponseBody()) {
+					if (jar != null && path.equals(PATH)) {
+						requests.incrementAndGet();
+						Thread.sleep(delay);
+						exchange.sendResponseHeaders(200, jar.length);
+						for (int i = 0; i < jar.length; i += rate > 0 ? rate : jar.length) {
+							out.write(jar, i, Math.min(jar.length - i, rate > 0 ? rate : jar.length));
+							out.flush();
+							if (rate > 0)
+								Thread.sleep(100);
+						}
+					} else if (sha1 != null && path.equals(PATH + ".sha1")) {
+						byte[] checksum = sha1.getBytes(StandardCharsets.UTF_8);
+						exchange.sendResponseHeaders(200, checksum.length);
+						out.write(checksum);
+					} else
+						exchange.sendResponseHeaders(404, -1);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			http.start();
+		}
+
+		String url() {
+			return "http://127.0.0.1:" + http.getAddress().getPort() + "/";
+		}
+
+		void stop() {
+			executor.shutdownNow();
+			http.stop(0);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package nl.cwi.swat.aethereal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ArtifactStatisticsTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ArtifactStatistics statistics;
+
+	@Before
+	public void computeStatistics() throws IOException {
+		DependencyGraphIndexBuilder builder = new DependencyGraphIndexBuilder();
+		builder.addNextVersion("org.a:lib:1.10", "org.a:lib:2.0");
+		builder.addNextVersion("org.a:lib:1.2", "org.a:lib:1.10");
+		builder.addLink("org.c:app:1.0", "org.a:lib:1.2", "Compile");
+		builder.addLink("org.c:app:1.1", "org.a:lib:2.0", "Compile");
+		builder.addLink("org.c:app:1.1", "org.b:single:1.0", "Compile");
+		builder.addLink("org.c:app:1.1", "org.a:lib:1.10", "Test");
+		// Neither in the version chains nor in the links
+		builder.addRelease("org.d:released:3.0", "2018-01-01");
+		Path index = folder.getRoot().toPath().resolve("graph.idx");
+		builder.write(index);
+		statistics = ArtifactStatistics.compute(DependencyGraphIndex.open(index), folder.newFolder().toString());
+	}
+
+	@Test
+	public void countsClients() {
+		assertEquals(2, statistics.clientsOf("org.a:lib"));
+		assertEquals(1, statistics.clientsOf("org.a:lib:2.0"));
+		assertEquals(0, statistics.clientsOf("org.a:lib:1.10"));
+		assertEquals(0, statistics.clientsOf("org.a:none"));
+	}
+
+	@Test
+	public void includesSingleVersions() {
+		assertEquals(1, statistics.clientsOf("org.b:single"));
+		assertEquals(1, statistics.clientsOf("org.b:single:1.0"));
+		assertEquals(Arrays.asList("org.a:lib:jar:2.0", "org.b:single:jar:1.0"),
+				coordinates(statistics.matching(new MavenCollectorQuery(1, 0, 0))));
+		assertEquals(4, statistics.size());
+		assertEquals(Arrays.asList("org.a:lib:jar:2.0", "org.c:app:jar:1.1"),
+				coordinates(statistics.matching(new MavenCollectorQuery(0, 0, 2))));
+	}
+
+	@Test
+	public void leavesOutUnknownSizes() {
+		assertEquals(Arrays.asList(), coordinates(statistics.matching(new MavenCollectorQuery(0, 1, 0))));
+	}
+
+	@Test
+	public void readsWhatItWrites() throws IOException {
+		Path path = folder.getRoot().toPath().resolve("statistics.bin");
+		statistics.write(path);
+		ArtifactStatistics read = ArtifactStatistics.read(path);
+		assertEquals(statistics.size(), read.size());
+		assertEquals(coordinates(statistics.matching(new MavenCollectorQuery(0, 0, 0))),
+				coordinates(read.matching(new MavenCollectorQuery(0, 0, 0))));
+		assertEquals(1, read.clientsOf("org.a:lib:1.2"));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsOtherFormats() throws IOException {
+		Path path = folder.getRoot().toPath().resolve("statistics.bin");
+		try (OutputStream fos = Files.newOutputStream(path); DataOutputStream out = new DataOutputStream(fos)) {
+			// Magic number without the format version
+			out.writeInt(0x41455354);
+			out.writeInt(0);
+			out.writeInt(0);
+		}
+		ArtifactStatistics.read(path);
+	}
+
+	private static List<String> coordinates(List<Artifact> artifacts) {
+		return artifacts.stream().map(Artifact::toString).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,216 @@
+package nl.cwi.swat.aethereal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DependencyGraphIndexTest {
+	private static final int ALL = DependencyScope.mask(Arrays.asList(DependencyScope.values()));
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path path;
+	private DependencyGraphIndex index;
+
+	@Before
+	public void buildIndex() throws IOException {
+		DependencyGraphIndexBuilder builder = new DependencyGraphIndexBuilder();
+		builder.addLinkLine("\"source\",\"target\",\"scope\"");
+		builder.addLinkLine("\"org.c:app:1.0\",\"org.a:lib:1.0\",\"Compile\"");
+		builder.addLink("org.d:tool:2.0", "org.a:lib:1.0", "Test");
+		builder.addLink("org.c:app:1.1", "org.a:lib:1.2", "Compile");
+		builder.addLink("org.e:ext:1.0", "org.a:lib-extra:1.0", "Runtime");
+		builder.addLink("org.f:odd:1.0", "org.a:lib:1.0", "Unheard-of");
+		// Restated links are only written once
+		builder.addLink("org.c:app:1.0", "org.a:lib:1.0", "Compile");
+		builder.addLink("org.c:app:1.1", "org.a:lib:1.2", "Compile");
+
+		builder.addNextVersion("org.a:lib:1.0", "org.a:lib:1.2");
+		builder.addNextVersion("org.a:lib:1.2", "org.a:lib:1.10");
+		builder.addNextVersion("org.c:app:1.0", "org.c:app:1.1");
+
+		builder.addRelease("org.a:lib:1.0", "2010-01-01");
+		builder.addRelease("org.a:lib:1.2", "1300000000000");
+		builder.addRelease("org.a:lib:1.10", "not a date");
+
+		path = folder.getRoot().toPath().resolve("graph.idx");
+		builder.write(path);
+		index = DependencyGraphIndex.open(path);
+	}
+
+	@Test
+	public void internsEveryCoordinate() {
+		assertEquals(9, index.size());
+		for (int id = 0; id < index.size(); id++)
+			assertEquals(id, index.lookup(index.coordinatesOf(id)));
+		assertEquals(-1, index.lookup("org.a:lib:9.9"));
+		assertEquals(-1, index.lookup("org.a:lib"));
+		assertEquals(-1, index.lookup(""));
+	}
+
+	@Test
+	public void sortsCoordinates() {
+		List<String> coordinates = new ArrayList<>();
+		for (int id = 0; id < index.size(); id++)
+			coordinates.add(index.coordinatesOf(id));
+		List<String> sorted = new ArrayList<>(coordinates);
+		Collections.sort(sorted);
+		assertEquals(sorted, coordinates);
+	}
+
+	@Test
+	public void findsIdsWithPrefix() {
+		assertEquals(Arrays.asList("org.a:lib:1.0", "org.a:lib:1.10", "org.a:lib:1.2"),
+				coordinatesOf(index.idsWithPrefix("org.a:lib:")));
+		assertEquals(4, index.idsWithPrefix("org.a:lib").length);
+		assertEquals(0, index.idsWithPrefix("org.b:").length);
+		assertEquals(0, index.idsWithPrefix("zzz").length);
+		assertEquals(index.size(), index.idsWithPrefix("").length);
+	}
+
+	@Test
+	public void filtersClientsByScope() {
+		int lib = index.lookup("org.a:lib:1.0");
+		assertEquals(Arrays.asList("org.c:app:1.0", "org.d:tool:2.0"), clientsOf(lib, ALL));
+		assertEquals(Arrays.asList("org.c:app:1.0"), clientsOf(lib, DependencyScope.COMPILE.mask()));
+		assertEquals(Arrays.asList("org.d:tool:2.0"), clientsOf(lib, DependencyScope.TEST.mask()));
+		assertEquals(Collections.emptyList(), clientsOf(lib, 0));
+		assertEquals(Collections.emptyList(), clientsOf(index.lookup("org.c:app:1.0"), ALL));
+	}
+
+	@Test
+	public void deduplicatesLinks() {
+		assertEquals(Arrays.asList("org.c:app:1.1"), clientsOf(index.lookup("org.a:lib:1.2"), ALL));
+
+		int[] count = new int[1];
+		index.forEachEdge(index.lookup("org.a:lib:1.0"), (source, scope) -> count[0]++);
+		// The unknown scope is kept, but never matches
+		assertEquals(3, count[0]);
+	}
+
+	@Test
+	public void followsVersionChains() {
+		int v10 = index.lookup("org.a:lib:1.0");
+		int v12 = index.lookup("org.a:lib:1.2");
+		int v110 = index.lookup("org.a:lib:1.10");
+		assertEquals(v12, index.nextVersion(v10));
+		assertEquals(v110, index.nextVersion(v12));
+		assertEquals(-1, index.nextVersion(v110));
+
+		assertTrue(index.isVersioned(v10));
+		assertTrue(index.isVersioned(v110));
+		assertFalse(index.isVersioned(index.lookup("org.d:tool:2.0")));
+	}
+
+	@Test
+	public void keepsReleaseDates() {
+		assertEquals(1262304000000L, index.releaseDate(index.lookup("org.a:lib:1.0")));
+		assertEquals(1300000000000L, index.releaseDate(index.lookup("org.a:lib:1.2")));
+		assertEquals(DependencyGraphIndex.UNKNOWN_DATE, index.releaseDate(index.lookup("org.a:lib:1.10")));
+		assertEquals(DependencyGraphIndex.UNKNOWN_DATE, index.releaseDate(index.lookup("org.c:app:1.0")));
+	}
+
+	@Test
+	public void ordersVersionsSemantically() {
+		assertEquals(Arrays.asList("org.a:lib:1.0", "org.a:lib:1.2", "org.a:lib:1.10"),
+				coordinatesOf(index.versionsOf("org.a:lib")));
+		// Unversioned coordinates of the same artifact are left out
+		assertEquals(Collections.emptyList(), index.versionsOf("org.d:tool"));
+		assertEquals(Collections.emptyList(), index.versionsOf("org.a:lib-extra"));
+		assertEquals(Collections.emptyList(), index.versionsOf("org.z:none"));
+	}
+
+	@Test
+	public void mergesIndexes() throws IOException {
+		DependencyGraphIndexBuilder builder = new DependencyGraphIndexBuilder();
+		builder.addIndex(index);
+		builder.addIndex(index);
+		Path merged = folder.getRoot().toPath().resolve("merged.idx");
+		builder.write(merged);
+		DependencyGraphIndex other = DependencyGraphIndex.open(merged);
+
+		assertEquals(index.size(), other.size());
+		for (int id = 0; id < index.size(); id++) {
+			assertEquals(index.coordinatesOf(id), other.coordinatesOf(id));
+			assertEquals(clientsOf(id, ALL), coordinatesOf(clients(other, id)));
+			assertEquals(index.nextVersion(id), other.nextVersion(id));
+			assertEquals(index.isVersioned(id), other.isVersioned(id));
+			assertEquals(index.releaseDate(id), other.releaseDate(id));
+		}
+	}
+
+	@Test
+	public void writesEmptyIndex() throws IOException {
+		Path empty = folder.getRoot().toPath().resolve("empty.idx");
+		new DependencyGraphIndexBuilder().write(empty);
+		DependencyGraphIndex index = DependencyGraphIndex.open(empty);
+		assertEquals(0, index.size());
+		assertEquals(-1, index.lookup("org.a:lib:1.0"));
+		assertArrayEquals(new int[0], index.idsWithPrefix(""));
+		assertEquals(Collections.emptyList(), index.versionsOf("org.a:lib"));
+	}
+
+	@Test
+	public void rejectsOtherFiles() throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+			file.seek(4);
+			file.writeInt(DependencyGraphIndex.FORMAT_VERSION + 1);
+		}
+		assertRejected(path, "Unsupported index format version");
+
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+			file.seek(0);
+			file.writeInt(0);
+		}
+		assertRejected(path, "Not a dependency graph index");
+
+		Path truncated = folder.newFile("truncated.idx").toPath();
+		assertRejected(truncated, "Not a dependency graph index");
+	}
+
+	private static void assertRejected(Path path, String message) {
+		try {
+			DependencyGraphIndex.open(path);
+			fail("Opened " + path);
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+		}
+	}
+
+	private List<String> clientsOf(int id, int scopeMask) {
+		List<Integer> ids = new ArrayList<>();
+		index.forEachClient(id, scopeMask, ids::add);
+		return coordinatesOf(ids.stream().mapToInt(Integer::intValue).toArray());
+	}
+
+	private static int[] clients(DependencyGraph graph, int id) {
+		List<Integer> ids = new ArrayList<>();
+		graph.forEachClient(id, ALL, ids::add);
+		return ids.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	private List<String> coordinatesOf(int[] ids) {
+		return Arrays.stream(ids).mapToObj(index::coordinatesOf).sorted().collect(Collectors.toList());
+	}
+
+	private List<String> coordinatesOf(List<Integer> ids) {
+		return ids.stream().map(index::coordinatesOf).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,180 @@
+package nl.cwi.swat.aethereal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DependencyGraphStoreTest {
+	private static final String BASE = "graph.idx";
+	private static final int ALL = DependencyScope.mask(Arrays.asList(DependencyScope.values()));
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path directory;
+	private DependencyGraphStore store;
+
+	@Before
+	public void createStore() throws IOException {
+		directory = folder.getRoot().toPath();
+		Path links = csv("links.csv", "\"source\",\"target\",\"scope\"",
+				"\"org.c:app:1.0\",\"org.a:lib:1.0\",\"Compile\"",
+				"\"org.d:tool:1.0\",\"org.a:lib:1.0\",\"Test\"",
+				// Restated by the base itself
+				"\"org.c:app:1.0\",\"org.a:lib:1.0\",\"Compile\"");
+		Path versions = csv("versions.csv", "\"source\",\"target\"", "\"org.a:lib:1.0\",\"org.a:lib:1.1\"");
+		Path releases = csv("releases.csv", "\"artifact\",\"release\"", "\"org.a:lib:1.0\",\"2010-01-01\"");
+		DependencyGraphIndexBuilder.build(links, versions, releases, directory.resolve(BASE));
+		store = DependencyGraphStore.create(directory, BASE);
+	}
+
+	@Test
+	public void deduplicatesBase() {
+		assertEquals(Arrays.asList("org.c:app:1.0", "org.d:tool:1.0"), clientsOf(store.snapshot(), "org.a:lib:1.0"));
+	}
+
+	@Test
+	public void mergesSegments() throws IOException {
+		appendDelta();
+		DependencyGraph snapshot = store.snapshot();
+
+		// Restated links are reported once, and links in another scope kept
+		assertEquals(Arrays.asList("org.c:app:1.0", "org.d:tool:1.0", "org.e:ext:1.0", "org.e:ext:1.0"),
+				clientsOf(snapshot, "org.a:lib:1.0"));
+		assertEquals(Arrays.asList("org.c:app:1.1"), clientsOf(snapshot, "org.a:lib:1.1"));
+		assertEquals(-1, snapshot.lookup("org.z:none:1.0"));
+
+		// The latest segment wins
+		int v10 = snapshot.lookup("org.a:lib:1.0");
+		assertEquals("org.a:lib:1.2", snapshot.coordinatesOf(snapshot.nextVersion(v10)));
+		assertEquals(1300000000000L, snapshot.releaseDate(v10));
+		int v11 = snapshot.lookup("org.a:lib:1.1");
+		assertEquals("org.a:lib:1.2", snapshot.coordinatesOf(snapshot.nextVersion(v11)));
+
+		assertEquals(Arrays.asList("org.a:lib:1.0", "org.a:lib:1.1", "org.a:lib:1.2"),
+				coordinatesOf(snapshot, snapshot.versionsOf("org.a:lib")));
+		assertEquals(Arrays.asList("org.a:lib:1.1"),
+				coordinatesOf(snapshot, snapshot.versionsOf("org.a:lib", "1.1", "1.2")));
+		assertEquals(3, snapshot.idsWithPrefix("org.a:lib:").length);
+	}
+
+	@Test
+	public void compactionPreservesGraph() throws IOException {
+		appendDelta();
+		appendDelta();
+		DependencyGraph before = store.snapshot();
+		Map<String, String> expected = dump(before);
+
+		store.compact();
+		DependencyGraph after = store.snapshot();
+		assertTrue(after instanceof DependencyGraphIndex);
+		assertEquals(expected, dump(after));
+		// Snapshots taken before the merge still work once its inputs are gone
+		assertFalse(Files.exists(directory.resolve(BASE)));
+		assertEquals(expected, dump(before));
+
+		DependencyGraphStore reopened = DependencyGraphStore.open(directory, BASE);
+		assertEquals(expected, dump(reopened.snapshot()));
+	}
+
+	@Test
+	public void compactionKeepsLaterSegments() throws IOException {
+		appendDelta();
+		store.compact();
+		appendDelta();
+		Map<String, String> expected = dump(store.snapshot());
+
+		DependencyGraphStore reopened = DependencyGraphStore.open(directory, BASE);
+		assertEquals(expected, dump(reopened.snapshot()));
+		assertEquals(expected, dump(reopened.compacted()));
+	}
+
+	@Test
+	public void compactsInBackground() throws Exception {
+		DependencyGraph base = store.snapshot();
+		store.compact();
+		assertSame(base, store.snapshot());
+
+		for (int i = 0; i < 9; i++)
+			appendDelta();
+		Map<String, String> expected = dump(store.snapshot());
+		// The last append may land on top of the merge it triggered
+		store.compactInBackground().get();
+		store.compactInBackground().get();
+		assertTrue(store.snapshot() instanceof DependencyGraphIndex);
+		assertEquals(expected, dump(store.snapshot()));
+	}
+
+	@Test
+	public void opensBaseWithoutManifest() throws IOException {
+		Files.delete(directory.resolve(DependencyGraphStore.MANIFEST));
+		assertTrue(DependencyGraphStore.exists(directory, BASE));
+		DependencyGraphStore reopened = DependencyGraphStore.open(directory, BASE);
+		assertEquals(dump(store.snapshot()), dump(reopened.snapshot()));
+	}
+
+	// Links restating the base, plus a new scope, client, version and date
+	private void appendDelta() throws IOException {
+		Path links = csv("delta-links.csv", "\"source\",\"target\",\"scope\"",
+				"\"org.c:app:1.0\",\"org.a:lib:1.0\",\"Compile\"",
+				"\"org.e:ext:1.0\",\"org.a:lib:1.0\",\"Compile\"",
+				"\"org.e:ext:1.0\",\"org.a:lib:1.0\",\"Runtime\"",
+				"\"org.c:app:1.1\",\"org.a:lib:1.1\",\"Compile\"");
+		Path versions = csv("delta-versions.csv", "\"org.a:lib:1.0\",\"org.a:lib:1.2\"",
+				"\"org.a:lib:1.1\",\"org.a:lib:1.2\"");
+		Path releases = csv("delta-releases.csv", "\"org.a:lib:1.0\",\"1300000000000\"");
+		store.append(links, versions, releases);
+	}
+
+	private Path csv(String name, String... lines) throws IOException {
+		return Files.write(directory.resolve(name), Arrays.asList(lines), StandardCharsets.UTF_8);
+	}
+
+	// Everything known about every coordinates, independently of their ids
+	private static Map<String, String> dump(DependencyGraph graph) {
+		Map<String, String> ret = new TreeMap<>();
+		for (int id = 0; id < graph.size(); id++) {
+			String coordinates = graph.coordinatesOf(id);
+			StringBuilder clients = new StringBuilder();
+			for (DependencyScope scope : DependencyScope.values())
+				clients.append(scope).append(clientsOf(graph, coordinates, scope.mask()));
+			int next = graph.nextVersion(id);
+			ret.put(coordinates, clients + " next=" + (next < 0 ? null : graph.coordinatesOf(next)) + " versioned="
+					+ graph.isVersioned(id) + " released=" + graph.releaseDate(id) + " versions="
+					+ coordinatesOf(graph, graph.versionsOf(VersionIndex.unversioned(coordinates))));
+		}
+		return ret;
+	}
+
+	private static List<String> clientsOf(DependencyGraph graph, String coordinates) {
+		return clientsOf(graph, coordinates, ALL);
+	}
+
+	private static List<String> clientsOf(DependencyGraph graph, String coordinates, int scopeMask) {
+		List<String> ret = new ArrayList<>();
+		graph.forEachClient(graph.lookup(coordinates), scopeMask, id -> ret.add(graph.coordinatesOf(id)));
+		ret.sort(null);
+		return ret;
+	}
+
+	private static List<String> coordinatesOf(DependencyGraph graph, List<Integer> ids) {
+		return ids.stream().map(graph::coordinatesOf).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,76 @@
+package nl.cwi.swat.aethereal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DownloadJournalTest {
+	private static final Artifact FIRST = new DefaultArtifact("org.example:first:1.0");
+	private static final Artifact SECOND = new DefaultArtifact("org.example:second:1.0");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path repository;
+	private Path journal;
+
+	@Before
+	public void createRepository() {
+		repository = folder.getRoot().toPath();
+		journal = repository.resolve(DownloadJournal.JOURNAL_FILE);
+	}
+
+	@Test
+	public void trustsRecordedDownloads() throws IOException {
+		File file = download(FIRST);
+		new DownloadJournal(repository).record(DownloadResult.success(FIRST, FIRST.setFile(file)), null);
+		assertEquals(file, new DownloadJournal(repository).verified(FIRST));
+		assertNull(new DownloadJournal(repository).verified(SECOND));
+	}
+
+	@Test
+	public void terminatesIncompleteLines() throws IOException {
+		File file = download(FIRST);
+		new DownloadJournal(repository).record(DownloadResult.success(FIRST, FIRST.setFile(file)),
+				ArtifactStore.sha1(file.toPath()));
+		List<String> lines = Files.readAllLines(journal, StandardCharsets.UTF_8);
+		// As left by a process that crashed while appending
+		String incomplete = lines.get(0).substring(0, lines.get(0).lastIndexOf('\t') - 3);
+		Files.write(journal, incomplete.replace(FIRST.toString(), SECOND.toString()).getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+
+		DownloadJournal reader = new DownloadJournal(repository);
+		assertNull(reader.verified(SECOND));
+		new DownloadJournal(repository).record(DownloadResult.failure(FIRST, "Lost"), null);
+
+		lines = Files.readAllLines(journal, StandardCharsets.UTF_8);
+		assertEquals(3, lines.size());
+		assertEquals(incomplete.replace(FIRST.toString(), SECOND.toString()), lines.get(1));
+		assertEquals("FAILED", lines.get(2).split("\t")[0]);
+		for (DownloadJournal journal : new DownloadJournal[] { reader, new DownloadJournal(repository) }) {
+			assertNull(journal.verified(FIRST));
+			assertNull(journal.verified(SECOND));
+		}
+	}
+
+	private File download(Artifact artifact) throws IOException {
+		File file = repository.resolve(artifact.getArtifactId() + ".jar").toFile();
+		FileUtils.writeStringToFile(file, artifact.toString(), StandardCharsets.UTF_8);
+		return file;
+	}
+}
@@ -0,0 +1,73 @@
+package nl.cwi.swat.aethereal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MirrorTest {
+	private static final double DELTA = 1e-9;
+
+	private final Mirror mirror = new Mirror("test", "http://127.0.0.1/", new AdaptiveRateLimiter("test", 8));
+
+	@Test
+	public void waitsLongUntilMeasured() {
+		assertTrue(Double.isNaN(mirror.getThroughput()));
+		for (int i = 0; i < 7; i++)
+			mirror.onDownload(1000, 10, 10);
+		assertEquals(2000, mirror.firstByteDelay(0.95));
+		// 100KB/s
+		assertEquals(10_000, mirror.transferDelay(1_000_000, 0.95));
+	}
+
+	@Test
+	public void hedgesFirstBytesAtPercentile() {
+		for (int i = 1; i <= 100; i++)
+			mirror.onDownload(1000, i * 10, -1);
+		assertEquals(950, mirror.firstByteDelay(0.95));
+		assertEquals(500, mirror.firstByteDelay(0.5));
+		assertEquals(1000, mirror.firstByteDelay(1));
+		// Too short to hedge
+		assertEquals(50, mirror.firstByteDelay(0));
+	}
+
+	@Test
+	public void forgetsOldFirstBytes() {
+		for (int i = 0; i < 128; i++)
+			mirror.onDownload(1000, 10_000, -1);
+		for (int i = 0; i < 128; i++)
+			mirror.onDownload(1000, 100, -1);
+		assertEquals(100, mirror.firstByteDelay(0.95));
+	}
+
+	@Test
+	public void hedgesTransfersAtSlowThroughput() {
+		// From 1 to 100 bytes/ms
+		for (int i = 1; i <= 100; i++)
+			mirror.onDownload(i * 1000, 10, 1000);
+		// Only 5% of the transfers were slower than 5 bytes/ms
+		assertEquals(200, mirror.transferDelay(1000, 0.95));
+		assertEquals(2_000_000, mirror.transferDelay(10_000_000, 0.95));
+		assertEquals(50, mirror.transferDelay(0, 0.95));
+		// Unknown transfer times don't count
+		for (int i = 0; i < 100; i++)
+			mirror.onDownload(1, 10, -1);
+		assertEquals(200, mirror.transferDelay(1000, 0.95));
+	}
+
+	@Test
+	public void estimatesThroughput() {
+		mirror.onDownload(1000, 0, 10);
+		assertEquals(100, mirror.getThroughput(), DELTA);
+		mirror.onDownload(1000, 50, 50);
+		assertEquals(0.2 * 10 + 0.8 * 100, mirror.getThroughput(), DELTA);
+		mirror.onFailure();
+		assertEquals((0.2 * 10 + 0.8 * 100) / 2, mirror.getThroughput(), DELTA);
+	}
+
+	@Test
+	public void ranksFailingMirrorsLast() {
+		mirror.onFailure();
+		assertEquals(0, mirror.getThroughput(), DELTA);
+	}
+}
@@ -0,0 +1,115 @@
+package nl.cwi.swat.aethereal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.maven.artifact.versioning.ComparableVersion;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class VersionIndexTest {
+	// Oldest first
+	private static final List<String> VERSIONS = Arrays.asList("1.0-alpha", "1.0", "1.0.1", "1.2", "1.10",
+			"2.0-SNAPSHOT", "2.0");
+	private static final List<String> BOUNDS = Arrays.asList(null, "", "0.1", "1.0-alpha", "1.0", "1.0.0", "1.1",
+			"1.10", "2.0-SNAPSHOT", "2", "3");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private VersionIndex versions;
+	private DependencyGraphIndex graph;
+
+	@Before
+	public void buildIndexes() throws IOException {
+		// Shuffled chain, plus an artifact sharing the prefix of org.a:lib
+		List<String> lines = new ArrayList<>();
+		lines.add("\"source\",\"target\"");
+		DependencyGraphIndexBuilder builder = new DependencyGraphIndexBuilder();
+		for (int i : new int[] { 4, 0, 5, 2, 1, 3 }) {
+			String older = "org.a:lib:" + VERSIONS.get(i);
+			String newer = "org.a:lib:" + VERSIONS.get(i + 1);
+			lines.add("\"" + older + "\",\"" + newer + "\"");
+			builder.addNextVersion(older, newer);
+		}
+		lines.add("\"org.a:lib-extra:1.5\",\"org.a:lib-extra:1.6\"");
+		builder.addNextVersion("org.a:lib-extra:1.5", "org.a:lib-extra:1.6");
+
+		Path csv = Files.write(folder.getRoot().toPath().resolve("next_all.csv"), lines, StandardCharsets.UTF_8);
+		versions = VersionIndex.build(new ParallelLineScanner(), csv);
+		Path index = folder.getRoot().toPath().resolve("graph.idx");
+		builder.write(index);
+		graph = DependencyGraphIndex.open(index);
+	}
+
+	@Test
+	public void sortsVersions() {
+		assertEquals(VERSIONS, versions.versionsOf("org.a:lib"));
+		assertEquals(VERSIONS, VersionIndex.sort(new HashSet<>(VERSIONS)));
+		assertEquals(Arrays.asList("1.5", "1.6"), versions.versionsOf("org.a:lib-extra"));
+		assertEquals(Collections.emptyList(), versions.versionsOf("org.a:none"));
+	}
+
+	@Test
+	public void treatsEmptyBoundsAsUnbounded() {
+		assertEquals(VERSIONS, versions.versionsOf("org.a:lib", null, null));
+		assertEquals(VERSIONS, versions.versionsOf("org.a:lib", "", ""));
+		assertEquals(Arrays.asList("1.2", "1.10", "2.0-SNAPSHOT", "2.0"),
+				versions.versionsOf("org.a:lib", "1.1", ""));
+		assertEquals(Arrays.asList("1.0-alpha", "1.0"), versions.versionsOf("org.a:lib", null, "1.0.1"));
+	}
+
+	@Test
+	public void includesLowerBoundOnly() {
+		assertEquals(Arrays.asList("1.0", "1.0.1", "1.2"), versions.versionsOf("org.a:lib", "1.0", "1.10"));
+		// Equal to 1.0 for Maven
+		assertEquals(Arrays.asList("1.0", "1.0.1", "1.2"), versions.versionsOf("org.a:lib", "1.0.0", "1.10"));
+		// Pre-releases come before their release
+		assertEquals(Arrays.asList("1.0-alpha"), versions.versionsOf("org.a:lib", null, "1.0"));
+		assertEquals(Arrays.asList("1.10", "2.0-SNAPSHOT"), versions.versionsOf("org.a:lib", "1.10", "2"));
+	}
+
+	@Test
+	public void yieldsEmptyRanges() {
+		assertEquals(Collections.emptyList(), versions.versionsOf("org.a:lib", "3", null));
+		assertEquals(Collections.emptyList(), versions.versionsOf("org.a:lib", null, "0.1"));
+		assertEquals(Collections.emptyList(), versions.versionsOf("org.a:lib", "1.2", "1.2"));
+		assertEquals(Collections.emptyList(), versions.versionsOf("org.a:lib", "1.1", "1.2"));
+		assertEquals(Collections.emptyList(), versions.versionsOf("org.a:lib", "2.0", "1.0"));
+		assertEquals(Collections.emptyList(), versions.versionsOf("org.a:none", "1.0", "2.0"));
+	}
+
+	@Test
+	public void searchesSubRanges() {
+		List<ComparableVersion> parsed = VERSIONS.stream().map(ComparableVersion::new).collect(Collectors.toList());
+		assertArrayEquals(new int[] { 2, 5 }, VersionIndex.range(2, 5, parsed::get, null, null));
+		assertArrayEquals(new int[] { 2, 3 }, VersionIndex.range(2, 5, parsed::get, "0.1", "1.1"));
+		assertArrayEquals(new int[] { 5, 5 }, VersionIndex.range(2, 5, parsed::get, "3", null));
+		assertArrayEquals(new int[] { 2, 2 }, VersionIndex.range(2, 5, parsed::get, null, "1.0"));
+		assertArrayEquals(new int[] { 4, 4 }, VersionIndex.range(4, 4, parsed::get, "1.0", "2.0"));
+	}
+
+	@Test
+	public void agreesWithGraphIndex() {
+		for (String lowerBound : BOUNDS)
+			for (String upperBound : BOUNDS) {
+				List<String> expected = versions.versionsOf("org.a:lib", lowerBound, upperBound);
+				List<String> actual = graph.versionsOf("org.a:lib", lowerBound, upperBound).stream()
+						.map(id -> VersionIndex.version(graph.coordinatesOf(id))).collect(Collectors.toList());
+				assertEquals("[" + lowerBound + ", " + upperBound + ")", expected, actual);
+			}
+	}
+}